@@ -0,0 +1,58 @@
+package com.renrui.presubmit.codereview.actions;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.ui.Messages;
+import com.renrui.review.cache.ReviewCacheStats;
+import com.renrui.review.service.BackendRateLimiter;
+import com.renrui.review.service.ReviewCacheService;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.datatransfer.StringSelection;
+import java.util.List;
+
+/**
+ * 显示审查缓存统计信息，以及各审查后端当前的限流状态
+ */
+public class CacheStatsAction extends AnAction {
+    private static final Logger LOG = Logger.getInstance(CacheStatsAction.class);
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        ReviewCacheStats stats = ReviewCacheService.getInstance().getReviewCache().getStats();
+        List<BackendRateLimiter.Stats> limiterStats = BackendRateLimiter.getAllStats();
+        String json = toJson(stats, limiterStats);
+        LOG.info("审查缓存统计: " + json);
+
+        StringBuilder message = new StringBuilder(stats.toString());
+        if (!limiterStats.isEmpty()) {
+            message.append("\n\n后端限流:");
+            for (BackendRateLimiter.Stats limiter : limiterStats) {
+                message.append("\n").append(limiter);
+            }
+        }
+        int choice = Messages.showOkCancelDialog(
+                e.getProject(),
+                message.toString(),
+                "审查缓存统计",
+                "复制 JSON",
+                "关闭",
+                Messages.getInformationIcon());
+        if (choice == Messages.OK) {
+            CopyPasteManager.getInstance().setContents(new StringSelection(json));
+        }
+    }
+
+    private static String toJson(ReviewCacheStats stats, List<BackendRateLimiter.Stats> limiterStats) {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        JsonObject json = new JsonObject();
+        json.add("cache", gson.toJsonTree(stats));
+        json.add("backends", gson.toJsonTree(limiterStats));
+        return gson.toJson(json);
+    }
+}
@@ -1,10 +1,14 @@
 package com.renrui.presubmit.codereview.editor;
 
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.codeInsight.daemon.LineMarkerInfo;
 import com.intellij.codeInsight.daemon.LineMarkerProvider;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.markup.GutterIconRenderer;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.IconLoader;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.ui.JBColor;
 import com.intellij.util.Function;
@@ -14,9 +18,9 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * AI 代码审查行标记提供器
@@ -24,24 +28,52 @@ import java.util.Map;
  */
 public class AiReviewLineMarkerProvider implements LineMarkerProvider {
     private static final Icon AI_ICON = IconLoader.getIcon("/icons/ai.svg", AiReviewLineMarkerProvider.class);
-    private static final Map<Integer, Issue> lineToIssueMap = new HashMap<>();
+    // 文件路径 -> 行号 -> 问题
+    private static final Map<String, Map<Integer, Issue>> fileToIssueMap = new ConcurrentHashMap<>();
 
     /**
      * 更新问题列表
      */
     public static void updateIssues(List<Issue> issues) {
-        lineToIssueMap.clear();
+        fileToIssueMap.clear();
         for (Issue issue : issues) {
-            lineToIssueMap.put(issue.getLine(), issue);
+            putIssue(issue);
         }
     }
 
+    /**
+     * 部分文件审查完成后更新这些文件的标记，其他文件的标记保持不变
+     * @param issuesByFile 已完成的文件及其问题
+     */
+    public static void addIssues(Project project, Map<String, List<Issue>> issuesByFile) {
+        for (Map.Entry<String, List<Issue>> entry : issuesByFile.entrySet()) {
+            fileToIssueMap.remove(entry.getKey());
+            for (Issue issue : entry.getValue()) {
+                putIssue(issue);
+            }
+        }
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (!project.isDisposed()) {
+                DaemonCodeAnalyzer.getInstance(project).restart();
+            }
+        });
+    }
+
+    private static void putIssue(Issue issue) {
+        String file = issue.getFile() == null ? "" : issue.getFile();
+        fileToIssueMap.computeIfAbsent(file, key -> new ConcurrentHashMap<>()).put(issue.getLine(), issue);
+    }
+
     @Nullable
     @Override
     public LineMarkerInfo<?> getLineMarkerInfo(@NotNull PsiElement element) {
         Document document = element.getContainingFile().getViewProvider().getDocument();
         if (document == null) return null;
 
+        VirtualFile file = element.getContainingFile().getVirtualFile();
+        Map<Integer, Issue> lineToIssueMap = file == null ? null : fileToIssueMap.get(file.getPath());
+        if (lineToIssueMap == null) return null;
+
         int line = document.getLineNumber(element.getTextOffset()) + 1;
         Issue issue = lineToIssueMap.get(line);
         if (issue == null) return null;
@@ -3,29 +3,47 @@ package com.renrui.presubmit.codereview.handler;
 import com.intellij.notification.NotificationGroupManager;
 import com.intellij.notification.NotificationType;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.CheckinProjectPanel;
+import com.intellij.openapi.vcs.changes.Change;
 import com.intellij.openapi.vcs.changes.CommitExecutor;
 import com.intellij.openapi.vcs.checkin.CheckinHandler;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.PairConsumer;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.renrui.presubmit.codereview.model.Issue;
-import com.renrui.presubmit.codereview.service.AiCodeReviewService;
-import com.renrui.presubmit.codereview.service.AiReviewServiceFactory;
+import com.renrui.presubmit.codereview.service.AsyncAiReviewService;
 import com.renrui.presubmit.codereview.service.impl.LocalRuleCheckService;
 import com.renrui.presubmit.codereview.settings.AiReviewSettings;
 import com.renrui.presubmit.codereview.ui.AiReviewDialog;
 import com.intellij.openapi.vcs.ui.RefreshableOnComponent;
+import com.renrui.review.content.ReviewContentProvider;
+import com.renrui.review.content.ReviewFileFilter;
+import com.renrui.review.diff.DiffPayload;
+import com.renrui.review.diff.DiffPayloadBuilder;
+import com.renrui.review.service.ReviewCancellation;
+import com.renrui.review.service.ReviewScheduler;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 代码提交拦截处理器
@@ -37,7 +55,6 @@ public class AiReviewCheckinHandler extends CheckinHandler {
     private final CheckinProjectPanel panel;
     // 当前项目实例
     private final Project project;
-    private final AiCodeReviewService aiService;
     private final LocalRuleCheckService localRuleService;
     private JCheckBox enableAiReview;
 
@@ -48,7 +65,6 @@ public class AiReviewCheckinHandler extends CheckinHandler {
     public AiReviewCheckinHandler(@NotNull CheckinProjectPanel panel) {
         this.panel = panel;
         this.project = panel.getProject();
-        this.aiService = AiReviewServiceFactory.getInstance();
         this.localRuleService = new LocalRuleCheckService();
     }
 
@@ -82,6 +98,8 @@ public class AiReviewCheckinHandler extends CheckinHandler {
 
     /**
      * 在代码提交前执行的处理方法
+     * 读取文件和审查在后台线程的可取消模态进度中执行，只有问题对话框在 EDT 中显示。
+     * 各阶段共享一个总时间预算，超出后依次降级，见 {@link ReviewLevel}
      * @param executor 提交执行器
      * @return 返回是否允许提交的结果
      */
@@ -92,71 +110,213 @@ public class AiReviewCheckinHandler extends CheckinHandler {
             return ReturnResult.COMMIT;
         }
 
+        // 提交面板只能在 EDT 中访问，先取出需要的数据
+        List<VirtualFile> files = new ArrayList<>(panel.getVirtualFiles());
+        Collection<Change> changes = new ArrayList<>(panel.getSelectedChanges());
+        String commitMessage = panel.getCommitMessage();
+        CommitReview review = new CommitReview(AiReviewSettings.getInstance().getCommitReviewBudgetMillis());
+        ProgressManager progressManager = ProgressManager.getInstance();
+
         try {
-            // 获取变更文件
-            Map<String, String> changedFiles = new HashMap<>();
-            for (VirtualFile file : panel.getVirtualFiles()) {
-                if (file != null && file.exists() && !file.isDirectory()) {
-                    try {
-                        changedFiles.put(file.getPath(), new String(file.contentsToByteArray()));
-                        LOG.debug("读取文件内容: " + file.getPath());
-                    } catch (IOException e) {
-                        LOG.error("读取文件内容失败: " + file.getPath(), e);
-                    }
+            boolean started = progressManager.runProcessWithProgressSynchronously(
+                    () -> startReview(review, files, changes, commitMessage),
+                    "AI 代码审查", true, project);
+            if (!started) {
+                if (review.level == ReviewLevel.SKIPPED) {
+                    showWarningNotification(review.describeLevel());
                 }
-            }
-
-            if (changedFiles.isEmpty()) {
-                LOG.info("没有需要审查的文件");
                 return ReturnResult.COMMIT;
             }
 
-            LOG.info("开始代码审查，变更文件数: " + changedFiles.size());
-            System.out.println("开始代码审查，变更文件数: " + changedFiles.size());
-            for (String file : changedFiles.keySet()) {
-                LOG.debug("待审查文件: " + file);
-                System.out.println("待审查文件: " + file);
-            }
-
-            // 执行本地规则检查
-            List<Issue> localIssues = localRuleService.checkRules(changedFiles);
-            LOG.info("本地规则检查返回问题列表: " + localIssues);
-            LOG.info("本地规则检查完成，发现问题数: " + localIssues.size());
-            for (Issue issue : localIssues) {
-                LOG.debug("本地规则问题: " + issue.getType() + " - " + issue.getMessage());
-            }
-            // 合并问题列表
-            List<Issue> allIssues = new java.util.ArrayList<>();
-            if(localIssues.isEmpty()){
-                // 执行 AI 审查
-                String commitMessage = panel.getCommitMessage();
-                LOG.info("开始 AI 审查，提交信息: " + commitMessage);
-                List<Issue> aiIssues = aiService.reviewChanges(changedFiles, commitMessage);
-                LOG.info("AI 审查完成，发现问题数: " + aiIssues.size());
-                for (Issue issue : aiIssues) {
-                    LOG.debug("AI 审查问题: " + issue.getType() + " - " + issue.getMessage());
-                }
-                allIssues.addAll(aiIssues);
-            }
-            allIssues.addAll(localIssues);
-
-            if (!allIssues.isEmpty()) {
-                LOG.warn("代码审查发现问题，总数: " + allIssues.size());
-                // 显示问题对话框
-                AiReviewDialog dialog = new AiReviewDialog(project, allIssues);
+            if (hasBlockingIssues(review.localIssues)) {
+                // 存在阻止提交的问题时不等待 AI 审查，用户取消提交后立即取消 AI 审查
+                LOG.warn("本地规则发现阻止提交的问题，总数: " + review.localIssues.size());
+                AiReviewDialog dialog = review.openDialog();
+                // 用户查看对话框的时间不计入时间预算
+                long dialogStart = System.nanoTime();
                 dialog.show();
-                return dialog.isOK() ? ReturnResult.COMMIT : ReturnResult.CANCEL;
+                review.extendBudget(System.nanoTime() - dialogStart);
+                int shownAiIssues = review.closeDialog();
+                if (!dialog.isOK()) {
+                    review.cancellation.cancel();
+                    review.aiReview.cancel(false);
+                    LOG.info("用户取消提交，已取消 AI 审查");
+                    return ReturnResult.CANCEL;
+                }
+                // 用户已确认本地问题，后续只展示对话框关闭后才返回的 AI 问题
+                progressManager.runProcessWithProgressSynchronously(
+                        () -> awaitAiReview(review), "等待 AI 代码审查", true, project);
+                return showIssues(review.aiIssuesSince(shownAiIssues), review);
             }
 
-            LOG.info("代码审查通过，未发现问题");
-            return ReturnResult.COMMIT;
+            // 合并问题列表
+            List<Issue> allIssues = new ArrayList<>(review.localIssues);
+            allIssues.addAll(progressManager.runProcessWithProgressSynchronously(
+                    () -> awaitAiReview(review), "等待 AI 代码审查", true, project));
+            return showIssues(allIssues, review);
+        } catch (ProcessCanceledException e) {
+            review.cancellation.cancel();
+            LOG.info("用户取消代码审查，提交已取消");
+            return ReturnResult.CANCEL;
         } catch (Exception e) {
+            review.cancellation.cancel();
             LOG.error("代码审查过程发生错误", e);
             showErrorNotification("代码审查失败: " + e.getMessage());
             return ReturnResult.COMMIT;
         }
     }
 
+    /**
+     * 在后台读取变更文件、开始 AI 审查并执行本地规则检查
+     * @return 没有需要审查的文件时返回 false
+     */
+    private boolean startReview(CommitReview review, List<VirtualFile> files, Collection<Change> changes,
+                                String commitMessage) {
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        indicator.setIndeterminate(false);
+        indicator.setText("读取变更文件");
+
+        // 获取变更文件，跳过二进制、生成和排除的文件
+        ReviewFileFilter filter = ReviewFileFilter.fromSettings();
+        Map<String, String> changedFiles = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            indicator.checkCanceled();
+            if (review.isBudgetExhausted()) {
+                // 已读取的文件仍执行本地规则检查
+                LOG.warn("读取文件超出时间预算，已读取 " + changedFiles.size() + "/" + files.size());
+                review.degrade(changedFiles.isEmpty() ? ReviewLevel.SKIPPED : ReviewLevel.LOCAL_ONLY,
+                        review.budgetExceededReason());
+                break;
+            }
+            VirtualFile file = files.get(i);
+            indicator.setText2(file.getPresentableUrl());
+            indicator.setFraction((double) i / files.size());
+            // 优先使用编辑器中的内容，包含未保存的修改
+            CharSequence content = ReviewContentProvider.load(file, filter);
+            if (content != null) {
+                changedFiles.put(file.getPath(), content.toString());
+                LOG.debug("读取文件内容: " + file.getPath());
+            }
+        }
+
+        if (changedFiles.isEmpty()) {
+            LOG.info("没有需要审查的文件");
+            return false;
+        }
+
+        LOG.info("开始代码审查，变更文件数: " + changedFiles.size());
+        for (String file : changedFiles.keySet()) {
+            LOG.debug("待审查文件: " + file);
+        }
+
+        // AI 审查在后台开始，与本地规则检查同时进行
+        if (review.level == ReviewLevel.FULL) {
+            LOG.info("开始 AI 审查，提交信息: " + commitMessage);
+            review.aiReview = startAiReview(changedFiles, changes, commitMessage, filter, review);
+        }
+
+        // 执行本地规则检查
+        indicator.setText("执行本地规则检查");
+        indicator.setText2("");
+        review.localIssues = localRuleService.checkRules(changedFiles);
+        LOG.info("本地规则检查完成，发现问题数: " + review.localIssues.size());
+        for (Issue issue : review.localIssues) {
+            LOG.debug("本地规则问题: " + issue.getType() + " - " + issue.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * 开始 AI 审查，开启 diff 审查时只发送选中变更的 diff 片段，问题行号换算回当前文件
+     * 生成 diff 需要从 VCS 读取修改前的版本，在后台执行并计入时间预算
+     * @param changedFiles 变更文件的完整内容，未开启 diff 审查时使用
+     */
+    private CompletableFuture<List<Issue>> startAiReview(Map<String, String> changedFiles, Collection<Change> changes,
+                                                         String commitMessage, ReviewFileFilter filter,
+                                                         CommitReview review) {
+        AsyncAiReviewService reviewService = AsyncAiReviewService.getInstance(project);
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        if (!settings.isEnableDiffReview()) {
+            review.submittedFiles = Set.copyOf(changedFiles.keySet());
+            return reviewService.reviewChangesStreaming(changedFiles, commitMessage, ReviewScheduler.Priority.COMMIT,
+                    review.cancellation, review::onPartial);
+        }
+
+        DiffPayloadBuilder builder = new DiffPayloadBuilder(settings.getDiffContextLines());
+        return CompletableFuture.supplyAsync(() -> {
+                    review.cancellation.checkCanceled();
+                    return builder.build(changes, filter);
+                }, AppExecutorUtil.getAppExecutorService())
+                .thenCompose(payloads -> {
+                    LOG.info("diff 审查文件数: " + payloads.size());
+                    if (payloads.isEmpty()) {
+                        return CompletableFuture.completedFuture(Collections.<Issue>emptyList());
+                    }
+                    review.submittedFiles = Set.copyOf(payloads.keySet());
+                    return reviewService.reviewDiffsStreaming(payloads, commitMessage,
+                            ReviewScheduler.Priority.COMMIT, review.cancellation, review::onPartial);
+                });
+    }
+
+    /**
+     * 在进度条中等待 AI 审查结束，失败时只记录日志，不影响本地规则的结果
+     * 超出时间预算时不再等待，使用已经返回的部分结果（包括缓存命中的文件）；
+     * AI 审查不取消，在后台完成后写入缓存，下次提交时直接命中。只有用户取消时才取消审查
+     * @throws ProcessCanceledException 用户取消了进度条
+     */
+    private List<Issue> awaitAiReview(CommitReview review) throws InterruptedException {
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        review.attach(indicator);
+        try {
+            List<Issue> aiIssues = review.hasBudget()
+                    ? review.cancellation.await(review.aiReview, indicator, review.deadlineNanos)
+                    : review.cancellation.await(review.aiReview, indicator);
+            LOG.info("AI 审查完成，发现问题数: " + aiIssues.size());
+            for (Issue issue : aiIssues) {
+                LOG.debug("AI 审查问题: " + issue.getType() + " - " + issue.getMessage());
+            }
+            return aiIssues;
+        } catch (TimeoutException e) {
+            review.degrade(!review.completedFiles.isEmpty() ? ReviewLevel.PARTIAL : ReviewLevel.LOCAL_ONLY,
+                    review.budgetExceededReason());
+            LOG.warn("AI 审查超出时间预算，已完成文件数: " + review.completedFiles.size() + "/"
+                    + review.submittedFiles.size() + "，剩余文件在后台继续审查");
+            review.aiReview.whenComplete((issues, error) -> {
+                if (error != null) {
+                    LOG.warn("后台 AI 审查失败", error);
+                } else {
+                    LOG.info("后台 AI 审查完成，发现问题数: " + issues.size());
+                }
+            });
+            return review.aiIssuesSince(0);
+        } catch (ExecutionException | CancellationException e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            LOG.warn("AI 审查失败", cause);
+            showErrorNotification("AI 代码审查失败: " + cause.getMessage());
+            review.degrade(ReviewLevel.LOCAL_ONLY, "AI 审查失败");
+            return Collections.emptyList();
+        } finally {
+            review.attach(null);
+        }
+    }
+
+    private ReturnResult showIssues(List<Issue> issues, CommitReview review) {
+        String status = review.level == ReviewLevel.FULL ? null : review.describeLevel();
+        if (!issues.isEmpty()) {
+            LOG.warn("代码审查发现问题，总数: " + issues.size() + "，审查级别: " + review.level);
+            // 显示问题对话框
+            AiReviewDialog dialog = new AiReviewDialog(project, issues, status);
+            dialog.show();
+            return dialog.isOK() ? ReturnResult.COMMIT : ReturnResult.CANCEL;
+        }
+
+        if (status != null) {
+            showWarningNotification(status);
+        }
+        LOG.info("代码审查通过，未发现问题，审查级别: " + review.level);
+        return ReturnResult.COMMIT;
+    }
+
     /**
      * 显示错误通知
      */
@@ -170,6 +330,19 @@ public class AiReviewCheckinHandler extends CheckinHandler {
                 .notify(project);
     }
 
+    /**
+     * 显示警告通知
+     */
+    private void showWarningNotification(String message) {
+        NotificationGroupManager.getInstance()
+                .getNotificationGroup("AI Code Review")
+                .createNotification(
+                        "代码审查",
+                        message,
+                        NotificationType.WARNING)
+                .notify(project);
+    }
+
     /**
      * 检查是否存在阻止提交的严重问题
      */
@@ -180,4 +353,138 @@ public class AiReviewCheckinHandler extends CheckinHandler {
         return issues.stream()
                 .anyMatch(issue -> issue.getType() == Issue.IssueType.SECURITY);
     }
-} 
\ No newline at end of file
+
+    /**
+     * 提交时审查达到的级别，超出时间预算后逐级降低
+     */
+    private enum ReviewLevel {
+        FULL("完整 AI 审查"),
+        // 超时前已返回的文件，包括缓存命中的文件
+        PARTIAL("部分 AI 审查结果"),
+        LOCAL_ONLY("仅本地规则"),
+        SKIPPED("未审查");
+
+        private final String description;
+
+        ReviewLevel(String description) {
+            this.description = description;
+        }
+    }
+
+    /**
+     * 一次提交审查的状态，在后台进度、本地问题对话框和 AI 审查线程之间共享
+     */
+    private class CommitReview {
+        private final ReviewCancellation cancellation = new ReviewCancellation();
+        private final int budgetMillis;
+        // System.nanoTime() 表示的截止时间，budgetMillis 不大于 0 时不限制
+        private volatile long deadlineNanos;
+        private volatile ReviewLevel level = ReviewLevel.FULL;
+        private volatile String levelReason = "";
+        // 按返回顺序记录的 AI 问题，由自身加锁保护
+        private final List<Issue> aiIssues = new ArrayList<>();
+        // 提交审查的文件，只有这些文件计入进度
+        private volatile Set<String> submittedFiles = Collections.emptySet();
+        // 已完成的提交文件，提交信息以及其他路径上的问题不计入
+        private final Set<String> completedFiles = ConcurrentHashMap.newKeySet();
+        private volatile List<Issue> localIssues = Collections.emptyList();
+        private volatile CompletableFuture<List<Issue>> aiReview = CompletableFuture.completedFuture(Collections.emptyList());
+        private volatile @Nullable ProgressIndicator indicator;
+        // 由 aiIssues 保护
+        private @Nullable AiReviewDialog dialog;
+
+        private CommitReview(int budgetMillis) {
+            this.budgetMillis = budgetMillis;
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMillis));
+        }
+
+        private boolean hasBudget() {
+            return budgetMillis > 0;
+        }
+
+        private boolean isBudgetExhausted() {
+            return hasBudget() && System.nanoTime() - deadlineNanos >= 0;
+        }
+
+        private void extendBudget(long nanos) {
+            deadlineNanos += nanos;
+        }
+
+        private void degrade(ReviewLevel level, String reason) {
+            this.level = level;
+            this.levelReason = reason;
+        }
+
+        private String budgetExceededReason() {
+            return "超出 " + budgetMillis + "ms 时间预算";
+        }
+
+        private String describeLevel() {
+            String description = "审查级别: " + level.description;
+            return levelReason.isEmpty() ? description : description + "（" + levelReason + "）";
+        }
+
+        /**
+         * 部分文件审查完成：更新进度，本地规则对话框打开期间直接追加到对话框中
+         */
+        private void onPartial(Map<String, List<Issue>> issuesByFile) {
+            List<Issue> issues = new ArrayList<>();
+            issuesByFile.values().forEach(issues::addAll);
+            synchronized (aiIssues) {
+                aiIssues.addAll(issues);
+                if (dialog != null) {
+                    dialog.addIssues(issues);
+                }
+            }
+
+            Set<String> submitted = submittedFiles;
+            String lastCompleted = null;
+            for (String file : issuesByFile.keySet()) {
+                if (submitted.contains(file) && completedFiles.add(file)) {
+                    lastCompleted = file;
+                }
+            }
+            ProgressIndicator current = indicator;
+            if (current != null && lastCompleted != null) {
+                int total = submitted.size();
+                int completed = Math.min(completedFiles.size(), total);
+                current.setText("AI 审查进度: " + completed + "/" + total);
+                current.setText2("已完成: " + lastCompleted);
+                current.setFraction((double) completed / total);
+            }
+        }
+
+        private void attach(@Nullable ProgressIndicator indicator) {
+            if (indicator != null) {
+                indicator.setIndeterminate(false);
+                indicator.setText("AI 审查进度: " + completedFiles.size() + "/" + submittedFiles.size());
+            }
+            this.indicator = indicator;
+        }
+
+        private AiReviewDialog openDialog() {
+            synchronized (aiIssues) {
+                List<Issue> shown = new ArrayList<>(localIssues);
+                shown.addAll(aiIssues);
+                dialog = new AiReviewDialog(project, shown);
+                return dialog;
+            }
+        }
+
+        /**
+         * @return 对话框关闭前已展示的 AI 问题数
+         */
+        private int closeDialog() {
+            synchronized (aiIssues) {
+                dialog = null;
+                return aiIssues.size();
+            }
+        }
+
+        private List<Issue> aiIssuesSince(int index) {
+            synchronized (aiIssues) {
+                return new ArrayList<>(aiIssues.subList(index, aiIssues.size()));
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.renrui.presubmit.codereview.service;
 
 import com.renrui.presubmit.codereview.model.Issue;
+import com.renrui.review.service.ReviewCancellation;
 import java.util.List;
 import java.util.Map;
 
@@ -17,6 +18,39 @@ public interface AiCodeReviewService {
      */
     List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage);
 
+    /**
+     * 可取消的代码审查，取消后应尽快中断网络请求或模型推理
+     * 默认实现只在开始前检查一次，支持中断的实现应覆盖该方法
+     * @param cancellation 取消令牌
+     * @throws java.util.concurrent.CancellationException 审查已取消
+     */
+    default List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                      ReviewCancellation cancellation) {
+        cancellation.checkCanceled();
+        return reviewChanges(changedFiles, commitMessage);
+    }
+
+    /**
+     * 流式代码审查，文件审查完成后立即通知监听器
+     * 默认实现在全部完成后按文件一次性通知，逐个文件审查的实现应覆盖该方法
+     * @param listener 进度监听器
+     * @return 全部问题
+     */
+    default List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                      ReviewCancellation cancellation, ReviewListener listener) {
+        List<Issue> issues = reviewChanges(changedFiles, commitMessage, cancellation);
+        ReviewListener.notifyByFile(listener, changedFiles.keySet(), issues);
+        return issues;
+    }
+
+    /**
+     * 请求是否先在客户端限流器中排队
+     * 返回 true 的实现在请求真正发出时调用 {@link ReviewListener#onRequestSent()}，调用方据此从发出时开始计时
+     */
+    default boolean isRateLimited() {
+        return false;
+    }
+
     /**
      * 获取服务类型
      * @return AI 服务类型（本地或云端）
@@ -1,6 +1,8 @@
 package com.renrui.presubmit.codereview.service;
 
 import com.renrui.presubmit.codereview.settings.AiReviewSettings;
+import com.renrui.presubmit.codereview.service.impl.AdaptiveAiReviewService;
+import com.renrui.presubmit.codereview.service.impl.ChunkCachingAiReviewService;
 import com.renrui.presubmit.codereview.service.impl.CloudAiReviewService;
 import com.renrui.presubmit.codereview.service.impl.LocalAiReviewService;
 import org.jetbrains.annotations.NotNull;
@@ -12,12 +14,14 @@ import org.jetbrains.annotations.NotNull;
 public class AiReviewServiceFactory {
     private static final String DEFAULT_API_KEY = "your-api-key-here";
     private static AiCodeReviewService instance;
+    // 审查 diff 片段的实例，不经过代码块缓存
+    private static AiCodeReviewService diffInstance;
 
     /**
      * 获取 AI 代码审查服务实例
      * @return 服务实例
      */
-    public static @NotNull AiCodeReviewService getInstance() {
+    public static synchronized @NotNull AiCodeReviewService getInstance() {
         if (instance == null) {
             AiReviewSettings settings = AiReviewSettings.getInstance();
             try {
@@ -29,7 +33,29 @@ public class AiReviewServiceFactory {
                 // 如果本地服务创建失败，默认使用云端服务
                 instance = new CloudAiReviewService();
             }
+            // 云端服务需要在请求中说明内容是 diff 片段以及行号的计算方式
+            diffInstance = instance instanceof CloudAiReviewService
+                    ? new CloudAiReviewService(CloudAiReviewService.PayloadFormat.UNIFIED_DIFF)
+                    : instance;
+            if (settings.isEnableAdaptiveTimeout()) {
+                instance = new AdaptiveAiReviewService(instance, settings.isEnableHedging());
+                diffInstance = new AdaptiveAiReviewService(diffInstance, settings.isEnableHedging());
+            }
+            if (settings.isEnableChunkCache()) {
+                instance = new ChunkCachingAiReviewService(instance);
+            }
         }
         return instance;
     }
+
+    /**
+     * 获取审查 diff 片段的服务实例
+     * diff 片段不是完整的 Java 源文件，无法按成员切分，因此不经过代码块缓存；
+     * 片段本身已按内容缓存在 {@link com.renrui.review.cache.ReviewCache} 中
+     * @return 服务实例
+     */
+    public static synchronized @NotNull AiCodeReviewService getDiffInstance() {
+        getInstance();
+        return diffInstance;
+    }
 } 
\ No newline at end of file
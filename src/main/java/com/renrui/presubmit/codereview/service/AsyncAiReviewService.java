@@ -1,20 +1,48 @@
 package com.renrui.presubmit.codereview.service;
 
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ChangeListManager;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.renrui.presubmit.codereview.editor.AiReviewLineMarkerProvider;
 import com.renrui.presubmit.codereview.model.Issue;
 import com.renrui.presubmit.codereview.settings.AiReviewSettings;
+import com.renrui.review.cache.ReviewCache;
+import com.renrui.review.cache.ReviewResult;
+import com.renrui.review.content.ReviewContentProvider;
+import com.renrui.review.content.ReviewFileFilter;
+import com.renrui.review.diff.DiffPayload;
+import com.renrui.review.diff.DiffPayloadBuilder;
+import com.renrui.review.service.ReviewBatcher;
+import com.renrui.review.service.ReviewCacheService;
+import com.renrui.review.service.ReviewCancellation;
+import com.renrui.review.service.ReviewCoalescer;
+import com.renrui.review.service.ReviewScheduler;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 异步 AI 代码审查服务
@@ -25,19 +53,48 @@ import java.util.concurrent.CompletableFuture;
     name = "AsyncAiReviewService",
     storages = {@Storage("asyncAiReviewService.xml")}
 )
-public final class AsyncAiReviewService {
+public final class AsyncAiReviewService implements Disposable {
+    private static final Logger LOG = Logger.getInstance(AsyncAiReviewService.class);
+
     private final Project project;
     private final AiCodeReviewService aiService;
+    // 审查 diff 片段的服务，不经过按 Java 成员切分的代码块缓存
+    private final AiCodeReviewService diffService;
+    // 审查调用主要在等待 HTTP 响应，支持时运行在虚拟线程上
+    private final ReviewScheduler scheduler;
+    // 在时间窗口内合并文件审查请求，按字节和文件数上限分批
+    private final ReviewBatcher fileBatcher;
+    private final ReviewBatcher diffBatcher;
+    // 按审查内容的hash合并进行中的文件审查，保存后立即提交时，提交直接等待预审查的结果
+    private final ReviewCoalescer<FileReview> inFlight = new ReviewCoalescer<>();
+    // 进行中审查的取消令牌及使用它的批次数，项目关闭时全部取消
+    private final Map<ReviewCancellation, Integer> activeReviews = new ConcurrentHashMap<>();
+    // 按审查内容的hash保存每个文件的问题，保存时的预审查结果在提交时直接命中
+    // 文件批次不携带提交信息，缓存的结果与提交信息无关
+    private final ReviewCache reviewCache;
 
     public AsyncAiReviewService(@NotNull Project project) {
         this.project = project;
         this.aiService = AiReviewServiceFactory.getInstance();
+        this.diffService = AiReviewServiceFactory.getDiffInstance();
+        this.scheduler = ReviewScheduler.createDefault();
+        this.fileBatcher = createBatcher(aiService, scheduler);
+        this.diffBatcher = createBatcher(diffService, scheduler);
+        this.reviewCache = ReviewCacheService.getInstance().getReviewCache();
     }
 
     public static AsyncAiReviewService getInstance(@NotNull Project project) {
         return project.getService(AsyncAiReviewService.class);
     }
 
+    private static ReviewBatcher createBatcher(AiCodeReviewService backend, ReviewScheduler scheduler) {
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        return new ReviewBatcher(backend, scheduler,
+                Duration.ofMillis(settings.getBatchWindowMillis()),
+                settings.getBatchMaxSizeKb() * 1024L,
+                settings.getBatchMaxFiles());
+    }
+
     /**
      * 执行代码审查
      */
@@ -46,24 +103,49 @@ public final class AsyncAiReviewService {
             return;
         }
 
-        // 收集变更文件
-        Map<String, String> changedFiles = collectChangedFiles();
-        if (changedFiles.isEmpty()) {
-            return;
-        }
+        // 异步执行代码审查，每批文件完成后立即显示其中的问题
+        ReviewCancellation cancellation = new ReviewCancellation();
+        ReviewListener listener = issuesByFile -> {
+            List<Issue> issues = new ArrayList<>();
+            issuesByFile.values().forEach(issues::addAll);
+            AiReviewLineMarkerProvider.addIssues(project, issuesByFile);
+            if (!issues.isEmpty()) {
+                showIssuesNotification(issues);
+            }
+        };
 
-        // 异步执行代码审查
-        new Thread(() -> {
-            try {
-                List<Issue> issues = aiService.reviewChanges(changedFiles, "");
-                if (!issues.isEmpty()) {
-                    showIssuesNotification(issues);
+        CompletableFuture<List<Issue>> review;
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        if (settings.isEnableDiffReview()) {
+            // 只审查本地变更的 diff 片段，读取修改前的版本可能访问 VCS，不在 EDT 中执行
+            DiffPayloadBuilder builder = new DiffPayloadBuilder(settings.getDiffContextLines());
+            Collection<Change> changes = ChangeListManager.getInstance(project).getAllChanges();
+            review = CompletableFuture.supplyAsync(() -> builder.build(changes, ReviewFileFilter.fromSettings()),
+                            AppExecutorUtil.getAppExecutorService())
+                    .thenCompose(payloads -> payloads.isEmpty()
+                            ? CompletableFuture.completedFuture(List.<Issue>of())
+                            : reviewDiffsStreaming(payloads, "", ReviewScheduler.Priority.INTERACTIVE, cancellation,
+                                    listener));
+        } else {
+            // 收集变更文件
+            Map<String, String> changedFiles = collectChangedFiles();
+            if (changedFiles.isEmpty()) {
+                return;
+            }
+            review = reviewChangesStreaming(changedFiles, "", ReviewScheduler.Priority.INTERACTIVE, cancellation,
+                    listener);
+        }
+        review.whenComplete((issues, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                if (cause instanceof CancellationException) {
+                    return;
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                showErrorNotification("代码审查失败: " + e.getMessage());
+                LOG.warn("代码审查失败", cause);
+                showErrorNotification("代码审查失败: " + cause.getMessage());
             }
-        }).start();
+        });
     }
 
     /**
@@ -71,16 +153,13 @@ public final class AsyncAiReviewService {
      */
     private Map<String, String> collectChangedFiles() {
         Map<String, String> files = new HashMap<>();
+        ReviewFileFilter filter = ReviewFileFilter.fromSettings();
         VirtualFile[] virtualFiles = project.getBaseDir().getChildren();
         
         for (VirtualFile file : virtualFiles) {
-            if (file != null && file.exists() && !file.isDirectory()) {
-                try {
-                    files.put(file.getPath(), new String(file.contentsToByteArray()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    showErrorNotification("无法读取文件: " + file.getPath());
-                }
+            CharSequence content = file == null ? null : ReviewContentProvider.load(file, filter);
+            if (content != null) {
+                files.put(file.getPath(), content.toString());
             }
         }
         return files;
@@ -123,12 +202,244 @@ public final class AsyncAiReviewService {
     }
 
     public CompletableFuture<List<Issue>> reviewChangesAsync(Map<String, String> changedFiles, String commitMessage) {
-        return CompletableFuture.supplyAsync(() -> {
+        return reviewChangesAsync(changedFiles, commitMessage, new ReviewCancellation());
+    }
+
+    /**
+     * 可取消的异步审查，提交对话框取消或后台任务被取消时调用 {@link ReviewCancellation#cancel()}
+     */
+    public CompletableFuture<List<Issue>> reviewChangesAsync(Map<String, String> changedFiles, String commitMessage,
+                                                             ReviewCancellation cancellation) {
+        return submit(ReviewScheduler.Priority.COMMIT, cancellation, () -> {
             try {
-                return aiService.reviewChanges(changedFiles, commitMessage);
+                return aiService.reviewChanges(changedFiles, commitMessage, cancellation);
+            } catch (CancellationException e) {
+                throw e;
             } catch (Exception e) {
                 throw new RuntimeException("Failed to review changes", e);
             }
         });
     }
+
+    /**
+     * 流式审查：按批次拆分文件并发审查，每个文件或批次完成后立即通知监听器
+     * 大提交的第一批结果在几秒内即可返回，不必等待最慢的文件；
+     * 内容没有变化、已经审查过（例如保存时预审查过）的文件直接使用 {@link ReviewCache} 中的结果。
+     * 文件批次不携带提交信息，提交信息单独审查，每次都会重新检查
+     * @param listener 进度监听器，在工作线程中调用
+     * @return 全部问题，任一批次失败时以该异常结束
+     */
+    public CompletableFuture<List<Issue>> reviewChangesStreaming(Map<String, String> changedFiles, String commitMessage,
+                                                                 ReviewScheduler.Priority priority,
+                                                                 ReviewCancellation cancellation,
+                                                                 ReviewListener listener) {
+        return reviewStreaming(changedFiles, true, commitMessage, priority, cancellation, listener);
+    }
+
+    /**
+     * @param wholeFiles 审查内容是否为文件的完整内容，是时可以使用文件的指纹或 git blob ID 作为缓存键
+     */
+    private CompletableFuture<List<Issue>> reviewStreaming(Map<String, String> changedFiles, boolean wholeFiles,
+                                                           String commitMessage, ReviewScheduler.Priority priority,
+                                                           ReviewCancellation cancellation, ReviewListener listener) {
+        CompletableFuture<List<Issue>> messageReview = commitMessage == null || commitMessage.isBlank()
+                ? CompletableFuture.completedFuture(List.of())
+                : submit(priority, cancellation,
+                        () -> aiService.reviewChanges(Map.of(), commitMessage, cancellation, listener));
+        // 计算hash和查询缓存可能读取磁盘或等待远程缓存，不在调用线程中执行
+        CompletableFuture<List<Issue>> fileReview = CompletableFuture
+                .supplyAsync(() -> lookupCached(changedFiles, wholeFiles, cancellation),
+                        AppExecutorUtil.getAppExecutorService())
+                .thenCompose(cached -> reviewUncached(changedFiles, cached, wholeFiles ? fileBatcher : diffBatcher,
+                        priority, cancellation, listener));
+        return fileReview.thenCombine(messageReview, (fileIssues, messageIssues) -> {
+            List<Issue> issues = new ArrayList<>(fileIssues);
+            issues.addAll(messageIssues);
+            return issues;
+        });
+    }
+
+    /**
+     * 计算每个文件审查内容的hash并批量查询缓存，超时放行的结果不算命中
+     */
+    private CachedFiles lookupCached(Map<String, String> changedFiles, boolean wholeFiles,
+                                     ReviewCancellation cancellation) {
+        cancellation.checkCanceled();
+        long maxFileBytes = ReviewFileFilter.fromSettings().getMaxFileBytes();
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : changedFiles.entrySet()) {
+            String hash = wholeFiles ? savedFileHash(entry.getKey(), maxFileBytes) : null;
+            hashes.put(entry.getKey(), hash != null ? hash : reviewCache.getContentHash(entry.getValue()));
+        }
+        Map<String, ReviewResult> results = reviewCache.getCachedResults(hashes.values());
+        Map<String, List<Issue>> hits = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            ReviewResult result = results.get(entry.getValue());
+            if (result != null && !result.isTimeout()) {
+                hits.put(entry.getKey(), withFile(result.getIssues(), entry.getKey()));
+            }
+        }
+        return new CachedFiles(hashes, hits);
+    }
+
+    /**
+     * 审查内容与磁盘上的文件一致时，使用缓存对文件的hash：文件未变化时复用上次的指纹，
+     * 开启 git blob 键时直接使用暂存区中的 blob ID，不必再计算一次内容hash
+     * @return 文件在编辑器中有未保存的修改、只审查了开头部分或不在本地文件系统时返回 null
+     */
+    private @Nullable String savedFileHash(String path, long maxFileBytes) {
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+        if (file == null || file.isDirectory() || file.getLength() > maxFileBytes) {
+            return null;
+        }
+        boolean modified = ReadAction.compute(() -> FileDocumentManager.getInstance().isFileModified(file));
+        return modified ? null : reviewCache.getContentHash(file);
+    }
+
+    /**
+     * 未命中缓存的文件逐个交给批处理，同一时间窗口内的文件合并成一次后端调用，每个文件完成后立即通知监听器
+     */
+    private CompletableFuture<List<Issue>> reviewUncached(Map<String, String> changedFiles, CachedFiles cached,
+                                                          ReviewBatcher batcher,
+                                                          ReviewScheduler.Priority priority,
+                                                          ReviewCancellation cancellation, ReviewListener listener) {
+        List<CompletableFuture<List<Issue>>> files = new ArrayList<>();
+        for (Map.Entry<String, String> entry : changedFiles.entrySet()) {
+            if (!cached.hits.containsKey(entry.getKey())) {
+                files.add(reviewFile(batcher, entry.getKey(), entry.getValue(), cached.hashes.get(entry.getKey()),
+                        priority, cancellation, listener));
+            }
+        }
+        if (!cached.hits.isEmpty()) {
+            LOG.info("审查结果命中: " + cached.hits.size() + "/" + changedFiles.size());
+            listener.onPartial(cached.hits);
+        }
+        return CompletableFuture.allOf(files.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> {
+                    List<Issue> issues = new ArrayList<>();
+                    cached.hits.values().forEach(issues::addAll);
+                    for (CompletableFuture<List<Issue>> future : files) {
+                        issues.addAll(future.join());
+                    }
+                    return issues;
+                });
+    }
+
+    /**
+     * 审查单个文件，不携带提交信息；所在批次的问题全部能对应到文件时，按审查内容的hash缓存该文件的结果
+     * 相同内容已有审查在进行时（例如保存时的预审查）直接等待它的结果，不再调用后端
+     * @param hash 审查内容的hash
+     */
+    private CompletableFuture<List<Issue>> reviewFile(ReviewBatcher batcher, String path, String content, String hash,
+                                                      ReviewScheduler.Priority priority,
+                                                      ReviewCancellation cancellation, ReviewListener listener) {
+        activeReviews.merge(cancellation, 1, Integer::sum);
+        CompletableFuture<List<Issue>> review = inFlight
+                .review(hash, cancellation, shared -> batcher.submit(path, content, priority, shared)
+                        .thenApply(batched -> {
+                            // 先写缓存再结束共享的审查，之后的调用方直接命中缓存
+                            if (batched.isCacheable()) {
+                                reviewCache.cacheResult(hash,
+                                        new ReviewResult(List.copyOf(batched.getIssues()), hash, false));
+                            } else {
+                                LOG.debug("问题无法对应到批次中的文件，不缓存: " + path);
+                            }
+                            return new FileReview(path, batched.getIssues());
+                        }))
+                .thenApply(reviewed -> {
+                    List<Issue> issues = reviewed.issues;
+                    if (!reviewed.path.equals(path)) {
+                        LOG.debug("复用进行中的审查: " + reviewed.path + " -> " + path);
+                        issues = withFile(issues, path);
+                    }
+                    ReviewListener.notifyByFile(listener, List.of(path), issues);
+                    return issues;
+                });
+        review.whenComplete((result, error) ->
+                activeReviews.computeIfPresent(cancellation, (key, count) -> count == 1 ? null : count - 1));
+        return review;
+    }
+
+    /**
+     * 流式审查 diff 片段，返回和通知的问题行号均已换算为当前文件的行号
+     * @param payloads 文件路径 -> diff 审查内容
+     */
+    public CompletableFuture<List<Issue>> reviewDiffsStreaming(Map<String, DiffPayload> payloads, String commitMessage,
+                                                               ReviewScheduler.Priority priority,
+                                                               ReviewCancellation cancellation,
+                                                               ReviewListener listener) {
+        Map<String, String> contents = new LinkedHashMap<>();
+        for (DiffPayload payload : payloads.values()) {
+            contents.put(payload.getPath(), payload.getText());
+        }
+        ReviewListener mappingListener = issuesByFile -> {
+            Map<String, List<Issue>> mapped = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Issue>> entry : issuesByFile.entrySet()) {
+                mapped.put(entry.getKey(), DiffPayload.mapIssues(entry.getValue(), payloads));
+            }
+            listener.onPartial(mapped);
+        };
+        return reviewStreaming(contents, false, commitMessage, priority, cancellation, mappingListener)
+                .thenApply(issues -> DiffPayload.mapIssues(issues, payloads));
+    }
+
+    /**
+     * 缓存以内容为键，相同内容可能来自其他路径，命中时把问题定位到当前文件
+     */
+    private static List<Issue> withFile(List<Issue> issues, String file) {
+        List<Issue> located = new ArrayList<>(issues.size());
+        for (Issue issue : issues) {
+            located.add(file.equals(issue.getFile()) ? issue
+                    : new Issue(issue.getType(), issue.getMessage(), file, issue.getLine(), issue.getSuggestion()));
+        }
+        return located;
+    }
+
+    private <T> CompletableFuture<T> submit(ReviewScheduler.Priority priority, ReviewCancellation cancellation,
+                                            Callable<T> work) {
+        activeReviews.merge(cancellation, 1, Integer::sum);
+        CompletableFuture<T> future = scheduler.submit(priority, cancellation, work);
+        future.whenComplete((result, error) ->
+                activeReviews.computeIfPresent(cancellation, (key, count) -> count == 1 ? null : count - 1));
+        return future;
+    }
+
+    /**
+     * 一次文件审查的结果，复用它的调用方据此判断是否需要把问题定位到自己的路径
+     */
+    private static final class FileReview {
+        // 发起审查的文件路径
+        private final String path;
+        private final List<Issue> issues;
+
+        private FileReview(String path, List<Issue> issues) {
+            this.path = path;
+            this.issues = issues;
+        }
+    }
+
+    /**
+     * 一次审查中各文件审查内容的hash，以及缓存命中的文件
+     */
+    private static final class CachedFiles {
+        // 文件路径 -> 审查内容的hash
+        private final Map<String, String> hashes;
+        // 命中的文件 -> 问题
+        private final Map<String, List<Issue>> hits;
+
+        private CachedFiles(Map<String, String> hashes, Map<String, List<Issue>> hits) {
+            this.hashes = hashes;
+            this.hits = hits;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        for (ReviewCancellation cancellation : activeReviews.keySet()) {
+            cancellation.cancel();
+        }
+        fileBatcher.shutdown();
+        diffBatcher.shutdown();
+        scheduler.shutdown();
+    }
 } 
\ No newline at end of file
@@ -3,10 +3,15 @@ package com.renrui.presubmit.codereview.service;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.renrui.presubmit.codereview.settings.AiReviewSettings;
+import com.renrui.review.service.BackendRateLimiter;
+import com.renrui.review.service.LatencyTracker;
+import com.renrui.review.service.ReviewCancellation;
 import okhttp3.*;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,13 +21,17 @@ public class OpenAiService {
     private static final String API_URL = "https://api.openai.com/v1/chat/completions";
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
     private static final Gson gson = new Gson();
+    private static final int MAX_THROTTLED_RETRIES = 3;
     private final OkHttpClient client;
+    private final LatencyTracker latencyTracker = LatencyTracker.forBackend("OPENAI");
+    private final BackendRateLimiter rateLimiter = BackendRateLimiter.forEndpoint(API_URL);
 
     public OpenAiService() {
+        // 读写不单独限制，每次请求按近期延迟设置整体超时
         this.client = new OkHttpClient.Builder()
                 .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.SECONDS)
+                .writeTimeout(0, TimeUnit.SECONDS)
                 .build();
     }
 
@@ -47,16 +56,45 @@ public class OpenAiService {
                 .post(RequestBody.create(gson.toJson(requestBody), JSON))
                 .build();
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful() || response.body() == null) {
-                throw new IOException("请求失败: " + response);
+        // 限流响应后等待限流器放行再重试
+        for (int attempt = 0; ; attempt++) {
+            BackendRateLimiter.Permit permit;
+            try {
+                permit = rateLimiter.acquire(ReviewCancellation.NONE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待请求名额时被中断");
             }
+            Call call = client.newCall(request);
+            Duration timeout = latencyTracker.timeoutFor(prompt.length());
+            call.timeout().timeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            long start = System.nanoTime();
+            try (Response response = call.execute()) {
+                if (BackendRateLimiter.isThrottled(response.code())) {
+                    permit.throttled(BackendRateLimiter.parseRetryAfter(response.header("Retry-After")));
+                    if (attempt < MAX_THROTTLED_RETRIES) {
+                        continue;
+                    }
+                }
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new IOException("请求失败: " + response);
+                }
 
-            JsonObject jsonResponse = gson.fromJson(response.body().string(), JsonObject.class);
-            return jsonResponse.getAsJsonArray("choices")
-                    .get(0).getAsJsonObject()
-                    .get("text").getAsString()
-                    .trim();
+                String body = response.body().string();
+                permit.success(prompt.length());
+                latencyTracker.record(Duration.ofNanos(System.nanoTime() - start), prompt.length());
+                JsonObject jsonResponse = gson.fromJson(body, JsonObject.class);
+                return jsonResponse.getAsJsonArray("choices")
+                        .get(0).getAsJsonObject()
+                        .get("text").getAsString()
+                        .trim();
+            } catch (InterruptedIOException e) {
+                // 超时的请求按超时时间计入统计，之后的超时随之放宽
+                latencyTracker.record(timeout, prompt.length());
+                throw e;
+            } finally {
+                permit.failure();
+            }
         }
     }
 
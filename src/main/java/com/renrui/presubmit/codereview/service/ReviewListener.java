@@ -0,0 +1,49 @@
+package com.renrui.presubmit.codereview.service;
+
+import com.renrui.presubmit.codereview.model.Issue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 审查进度监听器
+ * 每个文件或每个批次审查完成时立即收到其中的问题，不必等待整个提交审查结束。
+ * 可能在多个工作线程中并发调用，实现需要自行保证线程安全，更新界面时切换到 EDT。
+ */
+@FunctionalInterface
+public interface ReviewListener {
+    ReviewListener NONE = issuesByFile -> { };
+
+    /**
+     * 一部分文件审查完成
+     * @param issuesByFile 已完成的文件及其问题，没有问题的文件对应空列表
+     */
+    void onPartial(Map<String, List<Issue>> issuesByFile);
+
+    /**
+     * 请求通过客户端限流、真正发往后端，限流后重试时会再次调用
+     * 只有 {@link AiCodeReviewService#isRateLimited()} 为 true 的实现会调用
+     */
+    default void onRequestSent() {
+    }
+
+    /**
+     * 按文件分组问题并通知监听器，无法对应到已审查文件的问题按问题中的文件路径单独分组
+     * @param files 本次完成的文件
+     * @param issues 这些文件的问题
+     */
+    static void notifyByFile(ReviewListener listener, Collection<String> files, List<Issue> issues) {
+        Map<String, List<Issue>> issuesByFile = new LinkedHashMap<>();
+        for (String file : files) {
+            issuesByFile.put(file, new ArrayList<>());
+        }
+        for (Issue issue : issues) {
+            String file = issue.getFile() == null ? "" : issue.getFile();
+            issuesByFile.computeIfAbsent(file, key -> new ArrayList<>()).add(issue);
+        }
+        listener.onPartial(issuesByFile);
+    }
+}
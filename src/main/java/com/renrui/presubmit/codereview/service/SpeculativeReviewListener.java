@@ -0,0 +1,49 @@
+package com.renrui.presubmit.codereview.service;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.renrui.presubmit.codereview.settings.AiReviewSettings;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把项目内文件的保存和修改转交给 {@link SpeculativeReviewService}
+ * 编辑器保存文档时会写入 VFS，因此保存和外部修改都通过 VFS 事件收到。
+ */
+public class SpeculativeReviewListener implements BulkFileListener {
+    private final Project project;
+
+    public SpeculativeReviewListener(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+        // 未开启时不创建服务
+        if (!AiReviewSettings.getInstance().isEnableSpeculativeReview() || project.isDisposed()) {
+            return;
+        }
+
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        List<VirtualFile> files = new ArrayList<>();
+        for (VFileEvent event : events) {
+            if (!(event instanceof VFileContentChangeEvent) && !(event instanceof VFileCreateEvent)) {
+                continue;
+            }
+            VirtualFile file = event.getFile();
+            if (file != null && file.isValid() && !file.isDirectory() && fileIndex.isInContent(file)) {
+                files.add(file);
+            }
+        }
+        if (!files.isEmpty()) {
+            SpeculativeReviewService.getInstance(project).filesChanged(files);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.renrui.presubmit.codereview.service;
+
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ChangeListManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.renrui.presubmit.codereview.model.Issue;
+import com.renrui.presubmit.codereview.settings.AiReviewSettings;
+import com.renrui.review.content.ReviewContentProvider;
+import com.renrui.review.content.ReviewFileFilter;
+import com.renrui.review.diff.DiffPayload;
+import com.renrui.review.diff.DiffPayloadBuilder;
+import com.renrui.review.service.ReviewCancellation;
+import com.renrui.review.service.ReviewScheduler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 保存时的预审查服务
+ * 文件保存或在磁盘上被修改后，防抖一段时间，再以最低优先级在后台审查其中有未提交修改的文件。
+ * 审查内容与提交时相同（diff 片段或完整内容），结果按审查内容保存在审查缓存（{@link com.renrui.review.cache.ReviewCache}）中，
+ * 提交时没有再修改的文件直接命中，不再请求后端。
+ *
+ * 为了不影响正常使用：同一时间只运行一批预审查，每分钟预审查的文件数有上限，省电模式和索引期间暂停。
+ */
+public final class SpeculativeReviewService implements Disposable {
+    private static final Logger LOG = Logger.getInstance(SpeculativeReviewService.class);
+    private static final long QUOTA_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // 省电模式或索引期间的重试间隔
+    private static final long PAUSED_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Project project;
+    private final Set<VirtualFile> pending = ConcurrentHashMap.newKeySet();
+    private final ReviewCancellation cancellation = new ReviewCancellation();
+
+    // 以下字段由 this 保护
+    private @Nullable ScheduledFuture<?> flushTask;
+    private boolean running;
+    private long quotaWindowStart;
+    private int quotaUsed;
+
+    public SpeculativeReviewService(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static SpeculativeReviewService getInstance(@NotNull Project project) {
+        return project.getService(SpeculativeReviewService.class);
+    }
+
+    /**
+     * 文件已保存或被修改，防抖后预审查
+     */
+    public void filesChanged(Collection<VirtualFile> files) {
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        if (!settings.isEnabled() || !settings.isEnableSpeculativeReview() || cancellation.isCancelled()) {
+            return;
+        }
+        pending.addAll(files);
+        schedule(settings.getSpeculativeDebounceMillis());
+    }
+
+    /**
+     * 在指定时间后处理待审查的文件，之前安排的处理会被推迟
+     */
+    private synchronized void schedule(long delayMillis) {
+        if (cancellation.isCancelled()) {
+            return;
+        }
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flushTask = AppExecutorUtil.getAppScheduledExecutorService()
+                .schedule(this::flush, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        if (project.isDisposed() || pending.isEmpty()) {
+            return;
+        }
+        if (PowerSaveMode.isEnabled() || DumbService.isDumb(project)) {
+            LOG.debug("省电模式或索引中，暂停预审查");
+            schedule(PAUSED_RETRY_MILLIS);
+            return;
+        }
+
+        List<VirtualFile> files = new ArrayList<>();
+        synchronized (this) {
+            if (running) {
+                // 当前批次结束后再处理
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - quotaWindowStart >= QUOTA_WINDOW_MILLIS) {
+                quotaWindowStart = now;
+                quotaUsed = 0;
+            }
+            int quota = AiReviewSettings.getInstance().getSpeculativeMaxFilesPerMinute() - quotaUsed;
+            if (quota <= 0) {
+                LOG.debug("预审查达到每分钟文件数上限，稍后继续");
+                schedule(quotaWindowStart + QUOTA_WINDOW_MILLIS - now);
+                return;
+            }
+            for (Iterator<VirtualFile> iterator = pending.iterator(); iterator.hasNext() && files.size() < quota; ) {
+                files.add(iterator.next());
+                iterator.remove();
+            }
+            quotaUsed += files.size();
+            running = true;
+        }
+
+        CompletableFuture<List<Issue>> review;
+        try {
+            review = startReview(files);
+        } catch (RuntimeException e) {
+            LOG.warn("预审查失败", e);
+            review = CompletableFuture.failedFuture(e);
+        }
+        review.whenComplete((issues, error) -> {
+            if (error != null && !isCancellation(error)) {
+                LOG.debug("预审查失败", error);
+            }
+            synchronized (this) {
+                running = false;
+            }
+            if (!pending.isEmpty()) {
+                schedule(0);
+            }
+        });
+    }
+
+    /**
+     * 按提交时的方式生成审查内容并提交审查，只审查有未提交修改的文件
+     */
+    private CompletableFuture<List<Issue>> startReview(List<VirtualFile> files) {
+        ChangeListManager changeListManager = ChangeListManager.getInstance(project);
+        List<Change> changes = new ArrayList<>();
+        for (VirtualFile file : files) {
+            Change change = file.isValid() ? changeListManager.getChange(file) : null;
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+        if (changes.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        ReviewFileFilter filter = ReviewFileFilter.fromSettings();
+        AsyncAiReviewService reviewService = AsyncAiReviewService.getInstance(project);
+        if (settings.isEnableDiffReview()) {
+            Map<String, DiffPayload> payloads = new DiffPayloadBuilder(settings.getDiffContextLines())
+                    .build(changes, filter);
+            if (payloads.isEmpty()) {
+                return CompletableFuture.completedFuture(List.of());
+            }
+            LOG.debug("预审查文件数: " + payloads.size());
+            return reviewService.reviewDiffsStreaming(payloads, "", ReviewScheduler.Priority.BACKGROUND,
+                    cancellation, ReviewListener.NONE);
+        }
+
+        Map<String, String> contents = new LinkedHashMap<>();
+        for (Change change : changes) {
+            VirtualFile file = change.getVirtualFile();
+            CharSequence content = file == null ? null : ReviewContentProvider.load(file, filter);
+            if (content != null) {
+                contents.put(file.getPath(), content.toString());
+            }
+        }
+        if (contents.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        LOG.debug("预审查文件数: " + contents.size());
+        return reviewService.reviewChangesStreaming(contents, "", ReviewScheduler.Priority.BACKGROUND,
+                cancellation, ReviewListener.NONE);
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof CancellationException;
+    }
+
+    @Override
+    public void dispose() {
+        cancellation.cancel();
+        synchronized (this) {
+            if (flushTask != null) {
+                flushTask.cancel(false);
+            }
+        }
+        pending.clear();
+    }
+}
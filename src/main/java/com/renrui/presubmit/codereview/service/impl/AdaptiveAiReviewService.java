@@ -0,0 +1,276 @@
+package com.renrui.presubmit.codereview.service.impl;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.renrui.presubmit.codereview.model.Issue;
+import com.renrui.presubmit.codereview.service.AiCodeReviewService;
+import com.renrui.presubmit.codereview.service.ReviewListener;
+import com.renrui.review.service.LatencyTracker;
+import com.renrui.review.service.ReviewCancellation;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自适应超时和对冲请求的 AI 代码审查服务
+ * 记录后端的请求延迟，按 p99 推算本次请求的超时时间；开启对冲时，请求超过 p95 仍未返回则再发送一次，
+ * 使用先返回的结果并取消另一个请求。同时进行的对冲请求数有上限，达到上限时不再对冲。
+ * 后端有客户端限流时，超时、对冲和延迟统计都从请求通过限流器、真正发出时开始计算，排队时间不计入。
+ *
+ * 超时以 {@link CompletionException} 包装的 {@link TimeoutException} 抛出。
+ */
+public class AdaptiveAiReviewService implements AiCodeReviewService {
+    private static final Logger LOG = Logger.getInstance(AdaptiveAiReviewService.class);
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            daemonThreadFactory("AI-Review-Timer"));
+    // 同时进行的对冲请求上限，超出时不再对冲，避免绕过调度器的并发和队列限制
+    private static final int MAX_CONCURRENT_HEDGES = 2;
+    private static final long HEDGE_KEEP_ALIVE_SECONDS = 30;
+    private static final ExecutorService HEDGE_EXECUTOR = new ThreadPoolExecutor(0, MAX_CONCURRENT_HEDGES,
+            HEDGE_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            daemonThreadFactory("AI-Review-Hedge"));
+
+    private final AiCodeReviewService delegate;
+    private final LatencyTracker latencyTracker;
+    private final boolean hedging;
+
+    /**
+     * @param delegate 实际的审查服务
+     * @param hedging 是否发送对冲请求，会增加后端调用量
+     */
+    public AdaptiveAiReviewService(AiCodeReviewService delegate, boolean hedging) {
+        this(delegate, LatencyTracker.forBackend(delegate.getServiceType().name()), hedging);
+    }
+
+    public AdaptiveAiReviewService(AiCodeReviewService delegate, LatencyTracker latencyTracker, boolean hedging) {
+        this.delegate = delegate;
+        this.latencyTracker = latencyTracker;
+        this.hedging = hedging;
+    }
+
+    @Override
+    public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage) {
+        return reviewChanges(changedFiles, commitMessage, ReviewCancellation.NONE);
+    }
+
+    @Override
+    public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                     ReviewCancellation cancellation) {
+        return reviewChanges(changedFiles, commitMessage, cancellation, ReviewListener.NONE);
+    }
+
+    @Override
+    public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                     ReviewCancellation cancellation, ReviewListener listener) {
+        cancellation.checkCanceled();
+        // 对冲时两个请求都会上报进度，同一文件只通知一次
+        ReviewListener onceListener = deduplicate(listener);
+        long payloadBytes = payloadSize(changedFiles, commitMessage);
+        Duration timeout = latencyTracker.timeoutFor(payloadBytes);
+        Duration hedgeDelay = hedging ? latencyTracker.hedgeDelayFor(payloadBytes) : null;
+
+        CompletableFuture<List<Issue>> winner = new CompletableFuture<>();
+        ReviewCancellation primary = new ReviewCancellation();
+        ReviewCancellation hedge = new ReviewCancellation();
+        AtomicInteger running = new AtomicInteger(1);
+        // 得到结果、超时或调用方取消后，取消仍在进行的请求
+        winner.whenComplete((result, error) -> {
+            primary.cancel();
+            hedge.cancel();
+        });
+        Runnable unregister = cancellation.onCancel(() -> winner.cancel(false));
+
+        Timers timers = new Timers(winner, timeout, hedgeDelay, payloadBytes, () -> {
+            running.incrementAndGet();
+            try {
+                HEDGE_EXECUTOR.execute(() -> attempt(changedFiles, commitMessage, payloadBytes, hedge,
+                        onceListener, null, winner, running));
+            } catch (RejectedExecutionException e) {
+                LOG.debug("对冲请求已达上限，本次不对冲");
+                running.decrementAndGet();
+            }
+        });
+        // 在限流器中排队的时间不计入超时，等请求真正发出时再开始计时
+        if (!delegate.isRateLimited()) {
+            timers.arm();
+        }
+
+        try {
+            // 首个请求在当前线程执行
+            attempt(changedFiles, commitMessage, payloadBytes, primary, onceListener, timers, winner, running);
+            return winner.join();
+        } catch (CancellationException e) {
+            throw new CancellationException("审查已取消");
+        } catch (CompletionException e) {
+            // 后端自身的异常原样抛出，超时保持包装
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            timers.stop();
+            unregister.run();
+        }
+    }
+
+    @Override
+    public ServiceType getServiceType() {
+        return delegate.getServiceType();
+    }
+
+    public LatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    /**
+     * @param timers 首个请求的定时器，请求发出时开始计时；对冲请求为 null
+     */
+    private void attempt(Map<String, String> changedFiles, String commitMessage, long payloadBytes,
+                         ReviewCancellation attemptCancellation, ReviewListener listener, @Nullable Timers timers,
+                         CompletableFuture<List<Issue>> winner, AtomicInteger running) {
+        // 限流的后端从请求发出时开始计算延迟，限流重试后重新计算
+        AtomicLong start = new AtomicLong(System.nanoTime());
+        ReviewListener attemptListener = new ReviewListener() {
+            @Override
+            public void onPartial(Map<String, List<Issue>> issuesByFile) {
+                listener.onPartial(issuesByFile);
+            }
+
+            @Override
+            public void onRequestSent() {
+                start.set(System.nanoTime());
+                if (timers != null) {
+                    timers.arm();
+                }
+            }
+        };
+        try {
+            List<Issue> issues = delegate.reviewChanges(changedFiles, commitMessage, attemptCancellation,
+                    attemptListener);
+            latencyTracker.record(Duration.ofNanos(System.nanoTime() - start.get()), payloadBytes);
+            winner.complete(issues);
+        } catch (RuntimeException e) {
+            // 另一个请求仍在进行时以它的结果为准
+            if (running.decrementAndGet() == 0) {
+                winner.completeExceptionally(e);
+            } else if (!attemptCancellation.isCancelled()) {
+                LOG.debug("审查请求失败，等待另一个请求的结果", e);
+            }
+        }
+    }
+
+    private static ReviewListener deduplicate(ReviewListener listener) {
+        if (listener == ReviewListener.NONE) {
+            return listener;
+        }
+        Set<String> notified = ConcurrentHashMap.newKeySet();
+        return issuesByFile -> {
+            Map<String, List<Issue>> fresh = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Issue>> entry : issuesByFile.entrySet()) {
+                if (notified.add(entry.getKey())) {
+                    fresh.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (!fresh.isEmpty()) {
+                listener.onPartial(fresh);
+            }
+        };
+    }
+
+    private static long payloadSize(Map<String, String> changedFiles, @Nullable String commitMessage) {
+        long size = commitMessage == null ? 0 : commitMessage.length();
+        for (Map.Entry<String, String> entry : changedFiles.entrySet()) {
+            size += entry.getKey().length() + (entry.getValue() == null ? 0 : entry.getValue().length());
+        }
+        return size;
+    }
+
+    /**
+     * 首个请求的超时和对冲定时，每次调用 {@link #arm} 重新开始计时，对冲请求最多发送一次
+     */
+    private final class Timers {
+        private final CompletableFuture<List<Issue>> winner;
+        private final Duration timeout;
+        private final @Nullable Duration hedgeDelay;
+        private final long payloadBytes;
+        private final Runnable sendHedge;
+        private final AtomicBoolean hedged = new AtomicBoolean();
+        // 以下字段由 this 保护
+        private @Nullable ScheduledFuture<?> timeoutTask;
+        private @Nullable ScheduledFuture<?> hedgeTask;
+        private boolean stopped;
+
+        private Timers(CompletableFuture<List<Issue>> winner, Duration timeout, @Nullable Duration hedgeDelay,
+                       long payloadBytes, Runnable sendHedge) {
+            this.winner = winner;
+            this.timeout = timeout;
+            this.hedgeDelay = hedgeDelay;
+            this.payloadBytes = payloadBytes;
+            this.sendHedge = sendHedge;
+        }
+
+        synchronized void arm() {
+            if (stopped) {
+                return;
+            }
+            cancelTasks();
+            timeoutTask = TIMER.schedule(() -> {
+                if (winner.completeExceptionally(new TimeoutException("审查超时: " + timeout.toMillis() + "ms"))) {
+                    LOG.warn("审查后端 " + delegate.getServiceType() + " 超时，超时时间: " + timeout.toMillis() + "ms");
+                    latencyTracker.record(timeout, payloadBytes);
+                }
+            }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (hedgeDelay != null) {
+                hedgeTask = TIMER.schedule(() -> {
+                    if (!winner.isDone() && hedged.compareAndSet(false, true)) {
+                        LOG.debug("请求超过 p95 (" + hedgeDelay.toMillis() + "ms) 未返回，发送对冲请求");
+                        sendHedge.run();
+                    }
+                }, hedgeDelay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            cancelTasks();
+        }
+
+        private void cancelTasks() {
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            if (hedgeTask != null) {
+                hedgeTask.cancel(false);
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
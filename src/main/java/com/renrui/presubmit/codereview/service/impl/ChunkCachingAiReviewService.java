@@ -0,0 +1,163 @@
+package com.renrui.presubmit.codereview.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.diagnostic.Logger;
+import com.renrui.presubmit.codereview.model.Issue;
+import com.renrui.presubmit.codereview.service.AiCodeReviewService;
+import com.renrui.review.cache.ReviewCache;
+import com.renrui.review.chunk.CodeChunk;
+import com.renrui.review.chunk.JavaChunkSplitter;
+import com.renrui.review.service.ReviewCancellation;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按代码块缓存的 AI 代码审查服务
+ * 把 Java 文件按成员切分为代码块，每块按内容hash缓存审查结果，
+ * 只有发生变化的代码块才会发送给实际的审查服务，结果合并时修正行号。
+ */
+public class ChunkCachingAiReviewService implements AiCodeReviewService {
+    private static final Logger LOG = Logger.getInstance(ChunkCachingAiReviewService.class);
+    private static final String CHUNK_KEY_SEPARATOR = "#L";
+    private static final int MAX_CACHE_SIZE = 10000;
+    private static final Duration CACHE_EXPIRE_AFTER = Duration.ofHours(24);
+
+    private final AiCodeReviewService delegate;
+    private final JavaChunkSplitter splitter;
+    // 代码块内容hash + 后端 + 规则命名空间 -> 相对于代码块起始行的问题列表
+    private final Cache<String, List<Issue>> chunkCache;
+
+    public ChunkCachingAiReviewService(AiCodeReviewService delegate) {
+        this.delegate = delegate;
+        this.splitter = new JavaChunkSplitter();
+        this.chunkCache = Caffeine.newBuilder()
+                .maximumSize(MAX_CACHE_SIZE)
+                .expireAfterWrite(CACHE_EXPIRE_AFTER)
+                .build();
+    }
+
+    @Override
+    public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage) {
+        return reviewChanges(changedFiles, commitMessage, ReviewCancellation.NONE);
+    }
+
+    @Override
+    public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                     ReviewCancellation cancellation) {
+        List<Issue> issues = new ArrayList<>();
+        // 需要实际审查的内容：非 Java 文件按原路径，代码块按 "路径#L起始行"
+        Map<String, String> pending = new LinkedHashMap<>();
+        Map<String, PendingChunk> pendingChunks = new HashMap<>();
+        int cachedChunks = 0;
+        String namespace = ReviewCache.currentNamespace();
+
+        for (Map.Entry<String, String> entry : changedFiles.entrySet()) {
+            String filePath = entry.getKey();
+            String content = entry.getValue();
+            if (!filePath.endsWith(".java")) {
+                pending.put(filePath, content);
+                continue;
+            }
+
+            for (CodeChunk chunk : splitter.split(content)) {
+                String cacheKey = cacheKey(chunk, namespace);
+                List<Issue> cached = chunkCache.getIfPresent(cacheKey);
+                if (cached != null) {
+                    issues.addAll(relocate(cached, filePath, chunk.getStartLine()));
+                    cachedChunks++;
+                } else {
+                    String chunkKey = filePath + CHUNK_KEY_SEPARATOR + chunk.getStartLine();
+                    pending.put(chunkKey, chunk.getContent());
+                    pendingChunks.put(chunkKey, new PendingChunk(filePath, chunk.getStartLine(), cacheKey));
+                }
+            }
+        }
+
+        LOG.info("代码块缓存命中: " + cachedChunks + "，待审查: " + pending.size());
+        if (pending.isEmpty()) {
+            return issues;
+        }
+
+        Map<String, List<Issue>> chunkIssues = new HashMap<>();
+        for (String chunkKey : pendingChunks.keySet()) {
+            chunkIssues.put(chunkKey, new ArrayList<>());
+        }
+        // 问题没有按代码块返回时不知道它属于哪个代码块，该文件的代码块都不缓存，
+        // 否则下次命中时这些代码块被当作没有问题，问题就被隐藏了
+        Set<String> uncachedFiles = new HashSet<>();
+        boolean cacheNone = false;
+        for (Issue issue : delegate.reviewChanges(pending, commitMessage, cancellation)) {
+            List<Issue> target = issue.getFile() == null ? null : chunkIssues.get(issue.getFile());
+            if (target != null) {
+                target.add(issue);
+                continue;
+            }
+            issues.add(issue);
+            if (issue.getFile() == null || !changedFiles.containsKey(issue.getFile())) {
+                cacheNone = true;
+            } else if (!pending.containsKey(issue.getFile())) {
+                uncachedFiles.add(issue.getFile());
+            }
+        }
+        if (cacheNone || !uncachedFiles.isEmpty()) {
+            LOG.debug("问题无法对应到代码块，不缓存: " + (cacheNone ? "全部文件" : uncachedFiles));
+        }
+
+        for (Map.Entry<String, PendingChunk> entry : pendingChunks.entrySet()) {
+            PendingChunk chunk = entry.getValue();
+            List<Issue> relative = chunkIssues.get(entry.getKey());
+            if (!cacheNone && !uncachedFiles.contains(chunk.filePath)) {
+                chunkCache.put(chunk.cacheKey, relative);
+            }
+            issues.addAll(relocate(relative, chunk.filePath, chunk.startLine));
+        }
+        return issues;
+    }
+
+    @Override
+    public ServiceType getServiceType() {
+        return delegate.getServiceType();
+    }
+
+    /**
+     * 键中包含规则命名空间，切换规则后旧的代码块结果不再命中
+     */
+    private String cacheKey(CodeChunk chunk, String namespace) {
+        return Hashing.murmur3_128().hashString(chunk.getContent(), StandardCharsets.UTF_8)
+                + "|" + delegate.getServiceType().name() + "|" + namespace;
+    }
+
+    /**
+     * 把代码块内的行号换算为文件中的行号，没有行号的问题定位到代码块起始行
+     */
+    private List<Issue> relocate(List<Issue> relative, String filePath, int startLine) {
+        List<Issue> issues = new ArrayList<>(relative.size());
+        for (Issue issue : relative) {
+            int line = issue.getLine() > 0 ? startLine + issue.getLine() - 1 : startLine;
+            issues.add(new Issue(issue.getType(), issue.getMessage(), filePath, line, issue.getSuggestion()));
+        }
+        return issues;
+    }
+
+    private static final class PendingChunk {
+        private final String filePath;
+        private final int startLine;
+        private final String cacheKey;
+
+        private PendingChunk(String filePath, int startLine, String cacheKey) {
+            this.filePath = filePath;
+            this.startLine = startLine;
+            this.cacheKey = cacheKey;
+        }
+    }
+}
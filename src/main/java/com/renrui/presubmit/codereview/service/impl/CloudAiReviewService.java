@@ -5,7 +5,10 @@ import com.google.gson.reflect.TypeToken;
 import com.intellij.openapi.diagnostic.Logger;
 import com.renrui.presubmit.codereview.model.Issue;
 import com.renrui.presubmit.codereview.service.AiCodeReviewService;
+import com.renrui.presubmit.codereview.service.ReviewListener;
 import com.renrui.presubmit.codereview.settings.AiReviewSettings;
+import com.renrui.review.service.BackendRateLimiter;
+import com.renrui.review.service.ReviewCancellation;
 import okhttp3.*;
 import okhttp3.logging.HttpLoggingInterceptor;
 import org.apache.commons.lang3.StringUtils;
@@ -16,21 +19,34 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 云端 AI 代码审查服务实现
+ * 请求中的 options.format 说明 files 中内容的格式，diff 片段同时约定问题行号的计算方式，见 {@link PayloadFormat}
  */
 public class CloudAiReviewService implements AiCodeReviewService {
     private static final Logger LOG = Logger.getInstance(CloudAiReviewService.class);
     private static final String API_URL = "https://api.example.com/review";
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final int MAX_THROTTLED_RETRIES = 3;
     private final OkHttpClient client;
+    private final BackendRateLimiter rateLimiter = BackendRateLimiter.forEndpoint(API_URL);
     private final Gson gson;
     private final String apiKey;
     private final String modelPath;
+    private final PayloadFormat payloadFormat;
 
     public CloudAiReviewService() {
+        this(PayloadFormat.WHOLE_FILE);
+    }
+
+    /**
+     * @param payloadFormat files 中内容的格式
+     */
+    public CloudAiReviewService(PayloadFormat payloadFormat) {
+        this.payloadFormat = payloadFormat;
         this.client = new OkHttpClient();
         this.gson = new Gson();
         this.apiKey = System.getenv("AI_REVIEW_API_KEY");
@@ -41,48 +57,90 @@ public class CloudAiReviewService implements AiCodeReviewService {
 
     @Override
     public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage) {
+        return reviewChanges(changedFiles, commitMessage, ReviewCancellation.NONE);
+    }
+
+    @Override
+    public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                     ReviewCancellation cancellation) {
+        return reviewChanges(changedFiles, commitMessage, cancellation, ReviewListener.NONE);
+    }
+
+    @Override
+    public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                     ReviewCancellation cancellation, ReviewListener listener) {
+        cancellation.checkCanceled();
         try {
             LOG.info("开始云端 AI 审查，文件数: " + changedFiles.size());
             LOG.debug("提交信息: " + commitMessage);
 
-            // 构建请求体
-            Map<String, Object> requestBody = Map.of(
-                "files", changedFiles,
-                "commitMessage", commitMessage
-            );
-
             // 发送请求
+            RequestBody body = buildRequestBody(changedFiles, commitMessage);
+            long payloadBytes = body.contentLength();
             Request request = new Request.Builder()
                 .url(API_URL)
                 .addHeader("Authorization", "Bearer " + apiKey)
-                .post(RequestBody.create(gson.toJson(requestBody), JSON))
+                .post(body)
                 .build();
 
             LOG.debug("发送 API 请求: " + API_URL);
 
-            try (Response response = client.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    String error = "API request failed: " + response;
-                    LOG.error(error);
-                    throw new IOException(error);
-                }
+            // 限流响应后等待限流器放行再重试，不直接让审查失败
+            for (int attempt = 0; ; attempt++) {
+                BackendRateLimiter.Permit permit = acquirePermit(cancellation);
+                listener.onRequestSent();
+                // 取消时中断请求，execute() 随即抛出 IOException
+                Call call = client.newCall(request);
+                Runnable unregister = cancellation.onCancel(call::cancel);
+                try (Response response = call.execute()) {
+                    if (BackendRateLimiter.isThrottled(response.code()) && attempt < MAX_THROTTLED_RETRIES) {
+                        permit.throttled(BackendRateLimiter.parseRetryAfter(response.header("Retry-After")));
+                        continue;
+                    }
+                    if (!response.isSuccessful()) {
+                        if (BackendRateLimiter.isThrottled(response.code())) {
+                            permit.throttled(BackendRateLimiter.parseRetryAfter(response.header("Retry-After")));
+                        }
+                        String error = "API request failed: " + response;
+                        LOG.error(error);
+                        throw new IOException(error);
+                    }
 
-                String responseBody = response.body().string();
-                LOG.debug("收到 API 响应: " + responseBody);
+                    String responseBody = response.body().string();
+                    permit.success(payloadBytes);
+                    LOG.debug("收到 API 响应: " + responseBody);
 
-                Type listType = new TypeToken<ArrayList<Map<String, Object>>>(){}.getType();
-                List<Map<String, Object>> issues = gson.fromJson(responseBody, listType);
-                List<Issue> result = convertToIssues(issues);
+                    Type listType = new TypeToken<ArrayList<Map<String, Object>>>(){}.getType();
+                    List<Map<String, Object>> issues = gson.fromJson(responseBody, listType);
+                    List<Issue> result = convertToIssues(issues);
 
-                LOG.info("云端 AI 审查完成，发现问题数: " + result.size());
-                return result;
+                    LOG.info("云端 AI 审查完成，发现问题数: " + result.size());
+                    ReviewListener.notifyByFile(listener, changedFiles.keySet(), result);
+                    return result;
+                } finally {
+                    permit.failure();
+                    unregister.run();
+                }
             }
         } catch (IOException e) {
+            if (cancellation.isCancelled()) {
+                LOG.info("云端 AI 审查已取消");
+                throw new CancellationException("审查已取消");
+            }
             LOG.error("云端 AI 审查失败", e);
             throw new RuntimeException("Failed to review changes", e);
         }
     }
 
+    private BackendRateLimiter.Permit acquirePermit(ReviewCancellation cancellation) {
+        try {
+            return rateLimiter.acquire(cancellation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("审查已取消");
+        }
+    }
+
     private List<Issue> convertToIssues(List<Map<String, Object>> rawIssues) {
         List<Issue> issues = new ArrayList<>();
         for (Map<String, Object> issue : rawIssues) {
@@ -90,14 +148,16 @@ public class CloudAiReviewService implements AiCodeReviewService {
             String message = (String) issue.get("message");
             String file = (String) issue.get("file");
             String suggestion = (String) issue.get("suggestion");
+            // 没有行号时为 0
+            int line = issue.get("line") instanceof Number ? ((Number) issue.get("line")).intValue() : 0;
 
-            LOG.debug("转换问题: " + type + " - " + message + " (" + file + ")");
+            LOG.debug("转换问题: " + type + " - " + message + " (" + file + ":" + line + ")");
 
             issues.add(new Issue(
                 type,
                 message,
                 file,
-                0,  // 默认行号
+                line,
                 suggestion
             ));
         }
@@ -118,6 +178,11 @@ public class CloudAiReviewService implements AiCodeReviewService {
         };
     }
 
+    @Override
+    public boolean isRateLimited() {
+        return true;
+    }
+
     @Override
     public ServiceType getServiceType() {
         return ServiceType.CLOUD;
@@ -131,7 +196,9 @@ public class CloudAiReviewService implements AiCodeReviewService {
                 "files", sanitizeCode(changedFiles),
                 "commitMessage", StringUtils.defaultString(commitMessage, ""),
                 "options", Map.of(
-                        "language", "java",
+                        "format", payloadFormat.id,
+                        "lineNumbers", payloadFormat.lineNumbers,
+                        "instructions", payloadFormat.instructions,
                         "checkStyle", true,
                         "checkSecurity", true
                 )
@@ -139,6 +206,30 @@ public class CloudAiReviewService implements AiCodeReviewService {
         return RequestBody.create(gson.toJson(requestMap), JSON);
     }
 
+    /**
+     * 请求中 files 内容的格式及问题行号的约定
+     */
+    public enum PayloadFormat {
+        // 完整的文件内容
+        WHOLE_FILE("file", "file", "files 中为完整的文件内容，line 为问题所在的文件行号（从 1 开始），无法定位时为 0"),
+        // 统一 diff 片段，见 DiffPayloadBuilder
+        UNIFIED_DIFF("unified-diff", "new-file",
+                "files 中为统一 diff 格式的变更片段，以 \"@@ -a,b +c,d @@\" 开头，"
+                        + "每行以空格（上下文）、\"-\"（删除）或 \"+\"（新增）开头。"
+                        + "line 为修改后文件中的行号：从 hunk 头中 \"+\" 之后的 c 开始，按上下文行和新增行计数，"
+                        + "删除的行不计数；问题在删除的行上时使用其后一行的行号，无法定位时为 0");
+
+        private final String id;
+        private final String lineNumbers;
+        private final String instructions;
+
+        PayloadFormat(String id, String lineNumbers, String instructions) {
+            this.id = id;
+            this.lineNumbers = lineNumbers;
+            this.instructions = instructions;
+        }
+    }
+
     /**
      * 对代码进行脱敏处理
      */
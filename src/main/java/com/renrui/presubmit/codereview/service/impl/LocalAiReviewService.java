@@ -1,8 +1,11 @@
 package com.renrui.presubmit.codereview.service.impl;
 
 import ai.onnxruntime.*;
+import com.intellij.openapi.diagnostic.Logger;
 import com.renrui.presubmit.codereview.model.Issue;
 import com.renrui.presubmit.codereview.service.AiCodeReviewService;
+import com.renrui.presubmit.codereview.service.ReviewListener;
+import com.renrui.review.service.ReviewCancellation;
 import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
@@ -11,12 +14,14 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 /**
  * 本地 AI 代码审查服务实现
  * 使用 ONNX Runtime 加载预训练模型
  */
 public class LocalAiReviewService implements AiCodeReviewService {
+    private static final Logger LOG = Logger.getInstance(LocalAiReviewService.class);
     private static final String MODEL_RESOURCE_PATH = "/models/code_review_model.onnx";
     private final OrtEnvironment env;
     private final OrtSession session;
@@ -30,32 +35,68 @@ public class LocalAiReviewService implements AiCodeReviewService {
 
     @Override
     public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage) {
+        return reviewChanges(changedFiles, commitMessage, ReviewCancellation.NONE);
+    }
+
+    @Override
+    public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                     ReviewCancellation cancellation) {
+        return reviewChanges(changedFiles, commitMessage, cancellation, ReviewListener.NONE);
+    }
+
+    /**
+     * 逐个文件推理，每个文件完成后立即通知监听器
+     */
+    @Override
+    public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                     ReviewCancellation cancellation, ReviewListener listener) {
         List<Issue> issues = new ArrayList<>();
-        try {
-            // 对每个文件进行向量化处理
-            for (Map.Entry<String, String> entry : changedFiles.entrySet()) {
-                String file = entry.getKey();
-                String content = entry.getValue();
-                
-                // 获取代码向量
-                float[] codeVector = vectorizeCode(content);
-                
-                // 运行模型推理
-                OnnxTensor input = OnnxTensor.createTensor(env, codeVector);
-                Map<String, OnnxTensor> inputs = Map.of("input", input);
-                
-                try (OrtSession.Result results = session.run(inputs)) {
-                    // 解析模型输出
-                    float[] predictions = ((float[][]) results.get(0).getValue())[0];
-                    issues.addAll(interpretPredictions(predictions, file));
+        // 取消时通过 RunOptions 终止正在进行的推理，session.run 随即抛出 OrtException
+        try (OrtSession.RunOptions runOptions = new OrtSession.RunOptions()) {
+            Runnable unregister = cancellation.onCancel(() -> terminate(runOptions));
+            try {
+                // 对每个文件进行向量化处理
+                for (Map.Entry<String, String> entry : changedFiles.entrySet()) {
+                    cancellation.checkCanceled();
+                    String file = entry.getKey();
+                    String content = entry.getValue();
+
+                    // 获取代码向量
+                    float[] codeVector = vectorizeCode(content);
+
+                    // 运行模型推理
+                    try (OnnxTensor input = OnnxTensor.createTensor(env, codeVector)) {
+                        Map<String, OnnxTensor> inputs = Map.of("input", input);
+
+                        try (OrtSession.Result results = session.run(inputs, runOptions)) {
+                            // 解析模型输出
+                            float[] predictions = ((float[][]) results.get(0).getValue())[0];
+                            List<Issue> fileIssues = interpretPredictions(predictions, file);
+                            issues.addAll(fileIssues);
+                            listener.onPartial(Map.of(file, fileIssues));
+                        }
+                    }
                 }
+            } finally {
+                unregister.run();
             }
         } catch (Exception e) {
+            if (cancellation.isCancelled()) {
+                throw new CancellationException("审查已取消");
+            }
             e.printStackTrace();
         }
         return issues;
     }
 
+    private static void terminate(OrtSession.RunOptions runOptions) {
+        try {
+            runOptions.setTerminate(true);
+        } catch (OrtException e) {
+            LOG.warn("终止本地模型推理失败", e);
+        }
+    }
+
     @Override
     public ServiceType getServiceType() {
         return ServiceType.LOCAL;
@@ -30,6 +30,47 @@ public class AiReviewSettings implements PersistentStateComponent<AiReviewSettin
     private boolean enableMessagePunctuationCheck = true;
     private boolean enableTodoCheck = true;
 
+    // 审查结果磁盘缓存设置
+    private boolean enableDiskCache = true;
+    private int diskCacheMaxSizeMb = 256;
+    private boolean enableGitBlobKeys = true;
+    private int memoryCacheMaxSizeMb = 64;
+    private boolean enableChunkCache = true;
+
+    // 团队共享远程缓存设置，地址为空时不启用
+    private String remoteCacheUrl = "";
+    private boolean remoteCacheReadOnly = false;
+    private int remoteCacheBudgetMillis = 500;
+
+    // 审查调度设置
+    private int reviewConcurrency = 4;
+    private int reviewQueueCapacity = 1000;
+    // 运行在 JDK 21+ 时使用虚拟线程执行审查，否则回退到平台线程池
+    // 插件支持的 2023.1–2024.1（231–241）运行在 JBR 17 上，目前总是回退
+    private boolean useVirtualThreads = true;
+    private int virtualThreadConcurrency = 64;
+    // 单文件审查请求合并窗口，0 表示不合并
+    private int batchWindowMillis = 50;
+    private int batchMaxSizeKb = 256;
+    private int batchMaxFiles = 20;
+    // 按后端延迟百分位数推算超时时间；对冲请求会增加后端调用量，默认关闭
+    private boolean enableAdaptiveTimeout = true;
+    private boolean enableHedging = false;
+    // 只发送变更的 diff 片段，而不是整个文件
+    private boolean enableDiffReview = true;
+    private int diffContextLines = 3;
+    // 超过该大小的文件只审查开头部分，不整体读入内存
+    private int maxReviewFileSizeKb = 512;
+    // 不审查的文件，逗号分隔的 glob，不以 / 开头的模式匹配任意目录
+    private String reviewExcludePatterns = "*.min.js,*.min.css,*.map,*.lock,package-lock.json,pnpm-lock.yaml";
+    private boolean skipGeneratedFiles = true;
+    // 提交时审查的总时间预算，超出后依次降级为部分 AI 结果、仅本地规则、跳过审查；0 表示不限制
+    private int commitReviewBudgetMillis = 5000;
+    // 保存后在后台预先审查修改过的文件，提交时直接使用缓存的结果
+    private boolean enableSpeculativeReview = false;
+    private int speculativeDebounceMillis = 3000;
+    private int speculativeMaxFilesPerMinute = 20;
+
     public enum ReviewMode {
         LOCAL,
         CLOUD
@@ -139,6 +180,214 @@ public class AiReviewSettings implements PersistentStateComponent<AiReviewSettin
         this.enableTodoCheck = enableTodoCheck;
     }
 
+    public boolean isEnableDiskCache() {
+        return enableDiskCache;
+    }
+
+    public void setEnableDiskCache(boolean enableDiskCache) {
+        this.enableDiskCache = enableDiskCache;
+    }
+
+    public int getDiskCacheMaxSizeMb() {
+        return diskCacheMaxSizeMb;
+    }
+
+    public void setDiskCacheMaxSizeMb(int diskCacheMaxSizeMb) {
+        this.diskCacheMaxSizeMb = diskCacheMaxSizeMb;
+    }
+
+    public boolean isEnableGitBlobKeys() {
+        return enableGitBlobKeys;
+    }
+
+    public void setEnableGitBlobKeys(boolean enableGitBlobKeys) {
+        this.enableGitBlobKeys = enableGitBlobKeys;
+    }
+
+    public int getMemoryCacheMaxSizeMb() {
+        return memoryCacheMaxSizeMb;
+    }
+
+    public void setMemoryCacheMaxSizeMb(int memoryCacheMaxSizeMb) {
+        this.memoryCacheMaxSizeMb = memoryCacheMaxSizeMb;
+    }
+
+    public boolean isEnableChunkCache() {
+        return enableChunkCache;
+    }
+
+    public void setEnableChunkCache(boolean enableChunkCache) {
+        this.enableChunkCache = enableChunkCache;
+    }
+
+    public String getRemoteCacheUrl() {
+        return remoteCacheUrl;
+    }
+
+    public void setRemoteCacheUrl(String remoteCacheUrl) {
+        this.remoteCacheUrl = remoteCacheUrl;
+    }
+
+    public boolean isRemoteCacheReadOnly() {
+        return remoteCacheReadOnly;
+    }
+
+    public void setRemoteCacheReadOnly(boolean remoteCacheReadOnly) {
+        this.remoteCacheReadOnly = remoteCacheReadOnly;
+    }
+
+    public int getRemoteCacheBudgetMillis() {
+        return remoteCacheBudgetMillis;
+    }
+
+    public void setRemoteCacheBudgetMillis(int remoteCacheBudgetMillis) {
+        this.remoteCacheBudgetMillis = remoteCacheBudgetMillis;
+    }
+
+    public int getReviewConcurrency() {
+        return reviewConcurrency;
+    }
+
+    public void setReviewConcurrency(int reviewConcurrency) {
+        this.reviewConcurrency = reviewConcurrency;
+    }
+
+    public int getReviewQueueCapacity() {
+        return reviewQueueCapacity;
+    }
+
+    public void setReviewQueueCapacity(int reviewQueueCapacity) {
+        this.reviewQueueCapacity = reviewQueueCapacity;
+    }
+
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public int getVirtualThreadConcurrency() {
+        return virtualThreadConcurrency;
+    }
+
+    public void setVirtualThreadConcurrency(int virtualThreadConcurrency) {
+        this.virtualThreadConcurrency = virtualThreadConcurrency;
+    }
+
+    public int getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    public void setBatchWindowMillis(int batchWindowMillis) {
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    public int getBatchMaxSizeKb() {
+        return batchMaxSizeKb;
+    }
+
+    public void setBatchMaxSizeKb(int batchMaxSizeKb) {
+        this.batchMaxSizeKb = batchMaxSizeKb;
+    }
+
+    public int getBatchMaxFiles() {
+        return batchMaxFiles;
+    }
+
+    public void setBatchMaxFiles(int batchMaxFiles) {
+        this.batchMaxFiles = batchMaxFiles;
+    }
+
+    public boolean isEnableAdaptiveTimeout() {
+        return enableAdaptiveTimeout;
+    }
+
+    public void setEnableAdaptiveTimeout(boolean enableAdaptiveTimeout) {
+        this.enableAdaptiveTimeout = enableAdaptiveTimeout;
+    }
+
+    public boolean isEnableHedging() {
+        return enableHedging;
+    }
+
+    public void setEnableHedging(boolean enableHedging) {
+        this.enableHedging = enableHedging;
+    }
+
+    public boolean isEnableDiffReview() {
+        return enableDiffReview;
+    }
+
+    public void setEnableDiffReview(boolean enableDiffReview) {
+        this.enableDiffReview = enableDiffReview;
+    }
+
+    public int getDiffContextLines() {
+        return diffContextLines;
+    }
+
+    public void setDiffContextLines(int diffContextLines) {
+        this.diffContextLines = diffContextLines;
+    }
+
+    public int getMaxReviewFileSizeKb() {
+        return maxReviewFileSizeKb;
+    }
+
+    public void setMaxReviewFileSizeKb(int maxReviewFileSizeKb) {
+        this.maxReviewFileSizeKb = maxReviewFileSizeKb;
+    }
+
+    public String getReviewExcludePatterns() {
+        return reviewExcludePatterns;
+    }
+
+    public void setReviewExcludePatterns(String reviewExcludePatterns) {
+        this.reviewExcludePatterns = reviewExcludePatterns;
+    }
+
+    public boolean isSkipGeneratedFiles() {
+        return skipGeneratedFiles;
+    }
+
+    public void setSkipGeneratedFiles(boolean skipGeneratedFiles) {
+        this.skipGeneratedFiles = skipGeneratedFiles;
+    }
+
+    public int getCommitReviewBudgetMillis() {
+        return commitReviewBudgetMillis;
+    }
+
+    public void setCommitReviewBudgetMillis(int commitReviewBudgetMillis) {
+        this.commitReviewBudgetMillis = commitReviewBudgetMillis;
+    }
+
+    public boolean isEnableSpeculativeReview() {
+        return enableSpeculativeReview;
+    }
+
+    public void setEnableSpeculativeReview(boolean enableSpeculativeReview) {
+        this.enableSpeculativeReview = enableSpeculativeReview;
+    }
+
+    public int getSpeculativeDebounceMillis() {
+        return speculativeDebounceMillis;
+    }
+
+    public void setSpeculativeDebounceMillis(int speculativeDebounceMillis) {
+        this.speculativeDebounceMillis = speculativeDebounceMillis;
+    }
+
+    public int getSpeculativeMaxFilesPerMinute() {
+        return speculativeMaxFilesPerMinute;
+    }
+
+    public void setSpeculativeMaxFilesPerMinute(int speculativeMaxFilesPerMinute) {
+        this.speculativeMaxFilesPerMinute = speculativeMaxFilesPerMinute;
+    }
+
     public ReviewMode getReviewMode() {
         return ReviewMode.values()[aiMode];
     }
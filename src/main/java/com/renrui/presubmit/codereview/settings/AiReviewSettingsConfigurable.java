@@ -4,7 +4,9 @@ import com.intellij.openapi.options.Configurable;
 import com.intellij.openapi.options.ConfigurationException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.TextFieldWithBrowseButton;
+import com.intellij.ui.JBIntSpinner;
 import com.intellij.ui.components.JBCheckBox;
+import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.util.ui.FormBuilder;
 import com.renrui.presubmit.codereview.bundle.AiReviewBundle;
@@ -27,6 +29,36 @@ public class AiReviewSettingsConfigurable implements Configurable {
     private JBCheckBox enableSecurityCheck;
     private JBCheckBox enablePerformanceCheck;
     private JComboBox<String> aiModeComboBox;
+    // 审查缓存
+    private JBCheckBox enableDiskCache;
+    private JBIntSpinner diskCacheMaxSizeMb;
+    private JBIntSpinner memoryCacheMaxSizeMb;
+    private JBCheckBox enableGitBlobKeys;
+    private JBCheckBox enableChunkCache;
+    private JBTextField remoteCacheUrl;
+    private JBCheckBox remoteCacheReadOnly;
+    private JBIntSpinner remoteCacheBudgetMillis;
+    // 审查调度
+    private JBIntSpinner reviewConcurrency;
+    private JBIntSpinner reviewQueueCapacity;
+    private JBCheckBox useVirtualThreads;
+    private JBIntSpinner virtualThreadConcurrency;
+    private JBIntSpinner batchWindowMillis;
+    private JBIntSpinner batchMaxSizeKb;
+    private JBIntSpinner batchMaxFiles;
+    private JBCheckBox enableAdaptiveTimeout;
+    private JBCheckBox enableHedging;
+    // 审查内容
+    private JBCheckBox enableDiffReview;
+    private JBIntSpinner diffContextLines;
+    private JBIntSpinner maxReviewFileSizeKb;
+    private JBTextField reviewExcludePatterns;
+    private JBCheckBox skipGeneratedFiles;
+    // 提交审查和预审查
+    private JBIntSpinner commitReviewBudgetMillis;
+    private JBCheckBox enableSpeculativeReview;
+    private JBIntSpinner speculativeDebounceMillis;
+    private JBIntSpinner speculativeMaxFilesPerMinute;
 
     public AiReviewSettingsConfigurable(Project project) {
         this.project = project;
@@ -67,6 +99,34 @@ public class AiReviewSettingsConfigurable implements Configurable {
             AiReviewBundle.message("settings.ai.mode.cloud")
         });
 
+        // 缓存、调度、审查内容和提交审查的设置
+        enableDiskCache = new JBCheckBox(AiReviewBundle.message("settings.cache.disk"));
+        diskCacheMaxSizeMb = new JBIntSpinner(256, 16, 10240);
+        memoryCacheMaxSizeMb = new JBIntSpinner(64, 8, 2048);
+        enableGitBlobKeys = new JBCheckBox(AiReviewBundle.message("settings.cache.git.blob"));
+        enableChunkCache = new JBCheckBox(AiReviewBundle.message("settings.cache.chunk"));
+        remoteCacheUrl = new JBTextField();
+        remoteCacheReadOnly = new JBCheckBox(AiReviewBundle.message("settings.cache.remote.read.only"));
+        remoteCacheBudgetMillis = new JBIntSpinner(500, 50, 10000);
+        reviewConcurrency = new JBIntSpinner(4, 1, 64);
+        reviewQueueCapacity = new JBIntSpinner(1000, 10, 100000);
+        useVirtualThreads = new JBCheckBox(AiReviewBundle.message("settings.scheduler.virtual.threads"));
+        virtualThreadConcurrency = new JBIntSpinner(64, 1, 1024);
+        batchWindowMillis = new JBIntSpinner(50, 0, 5000);
+        batchMaxSizeKb = new JBIntSpinner(256, 1, 10240);
+        batchMaxFiles = new JBIntSpinner(20, 1, 500);
+        enableAdaptiveTimeout = new JBCheckBox(AiReviewBundle.message("settings.scheduler.adaptive.timeout"));
+        enableHedging = new JBCheckBox(AiReviewBundle.message("settings.scheduler.hedging"));
+        enableDiffReview = new JBCheckBox(AiReviewBundle.message("settings.content.diff"));
+        diffContextLines = new JBIntSpinner(3, 0, 50);
+        maxReviewFileSizeKb = new JBIntSpinner(512, 1, 102400);
+        reviewExcludePatterns = new JBTextField();
+        skipGeneratedFiles = new JBCheckBox(AiReviewBundle.message("settings.content.skip.generated"));
+        commitReviewBudgetMillis = new JBIntSpinner(5000, 0, 600000);
+        enableSpeculativeReview = new JBCheckBox(AiReviewBundle.message("settings.speculative"));
+        speculativeDebounceMillis = new JBIntSpinner(3000, 0, 600000);
+        speculativeMaxFilesPerMinute = new JBIntSpinner(20, 1, 1000);
+
         // 使用 FormBuilder 构建布局
         JPanel formPanel = FormBuilder.createFormBuilder()
                 .addLabeledComponent(AiReviewBundle.message("settings.ai.mode") + ":", aiModeComboBox)
@@ -78,10 +138,50 @@ public class AiReviewSettingsConfigurable implements Configurable {
                 .addComponent(enableBugDetection)
                 .addComponent(enableSecurityCheck)
                 .addComponent(enablePerformanceCheck)
+                .addSeparator()
+                .addComponent(new JLabel(AiReviewBundle.message("settings.cache")))
+                .addComponent(enableDiskCache)
+                .addLabeledComponent(AiReviewBundle.message("settings.cache.disk.size") + ":", diskCacheMaxSizeMb)
+                .addLabeledComponent(AiReviewBundle.message("settings.cache.memory.size") + ":", memoryCacheMaxSizeMb)
+                .addComponent(enableGitBlobKeys)
+                .addComponent(enableChunkCache)
+                .addLabeledComponent(AiReviewBundle.message("settings.cache.remote.url") + ":", remoteCacheUrl)
+                .addComponent(remoteCacheReadOnly)
+                .addLabeledComponent(AiReviewBundle.message("settings.cache.remote.budget") + ":",
+                        remoteCacheBudgetMillis)
+                .addSeparator()
+                .addComponent(new JLabel(AiReviewBundle.message("settings.scheduler")))
+                .addLabeledComponent(AiReviewBundle.message("settings.scheduler.concurrency") + ":", reviewConcurrency)
+                .addLabeledComponent(AiReviewBundle.message("settings.scheduler.queue.capacity") + ":",
+                        reviewQueueCapacity)
+                .addComponent(useVirtualThreads)
+                .addLabeledComponent(AiReviewBundle.message("settings.scheduler.virtual.concurrency") + ":",
+                        virtualThreadConcurrency)
+                .addLabeledComponent(AiReviewBundle.message("settings.scheduler.batch.window") + ":", batchWindowMillis)
+                .addLabeledComponent(AiReviewBundle.message("settings.scheduler.batch.size") + ":", batchMaxSizeKb)
+                .addLabeledComponent(AiReviewBundle.message("settings.scheduler.batch.files") + ":", batchMaxFiles)
+                .addComponent(enableAdaptiveTimeout)
+                .addComponent(enableHedging)
+                .addSeparator()
+                .addComponent(new JLabel(AiReviewBundle.message("settings.content")))
+                .addComponent(enableDiffReview)
+                .addLabeledComponent(AiReviewBundle.message("settings.content.diff.context") + ":", diffContextLines)
+                .addLabeledComponent(AiReviewBundle.message("settings.content.max.size") + ":", maxReviewFileSizeKb)
+                .addLabeledComponent(AiReviewBundle.message("settings.content.exclude") + ":", reviewExcludePatterns)
+                .addComponent(skipGeneratedFiles)
+                .addSeparator()
+                .addComponent(new JLabel(AiReviewBundle.message("settings.commit")))
+                .addLabeledComponent(AiReviewBundle.message("settings.commit.budget") + ":", commitReviewBudgetMillis)
+                .addComponent(enableSpeculativeReview)
+                .addLabeledComponent(AiReviewBundle.message("settings.speculative.debounce") + ":",
+                        speculativeDebounceMillis)
+                .addLabeledComponent(AiReviewBundle.message("settings.speculative.max.files") + ":",
+                        speculativeMaxFilesPerMinute)
                 .addComponentFillVertically(new JPanel(), 0)
                 .getPanel();
 
-        mainPanel.add(formPanel, BorderLayout.CENTER);
+        // 设置项较多，放在滚动面板中
+        mainPanel.add(new JBScrollPane(formPanel), BorderLayout.CENTER);
 
         // 加载当前设置
         loadSettings();
@@ -98,7 +198,33 @@ public class AiReviewSettingsConfigurable implements Configurable {
                enableBugDetection.isSelected() != settings.isEnableBugDetection() ||
                enableSecurityCheck.isSelected() != settings.isEnableSecurityCheck() ||
                enablePerformanceCheck.isSelected() != settings.isEnablePerformanceCheck() ||
-               aiModeComboBox.getSelectedIndex() != settings.getAiMode();
+               aiModeComboBox.getSelectedIndex() != settings.getAiMode() ||
+               enableDiskCache.isSelected() != settings.isEnableDiskCache() ||
+               diskCacheMaxSizeMb.getNumber() != settings.getDiskCacheMaxSizeMb() ||
+               memoryCacheMaxSizeMb.getNumber() != settings.getMemoryCacheMaxSizeMb() ||
+               enableGitBlobKeys.isSelected() != settings.isEnableGitBlobKeys() ||
+               enableChunkCache.isSelected() != settings.isEnableChunkCache() ||
+               !remoteCacheUrl.getText().equals(settings.getRemoteCacheUrl()) ||
+               remoteCacheReadOnly.isSelected() != settings.isRemoteCacheReadOnly() ||
+               remoteCacheBudgetMillis.getNumber() != settings.getRemoteCacheBudgetMillis() ||
+               reviewConcurrency.getNumber() != settings.getReviewConcurrency() ||
+               reviewQueueCapacity.getNumber() != settings.getReviewQueueCapacity() ||
+               useVirtualThreads.isSelected() != settings.isUseVirtualThreads() ||
+               virtualThreadConcurrency.getNumber() != settings.getVirtualThreadConcurrency() ||
+               batchWindowMillis.getNumber() != settings.getBatchWindowMillis() ||
+               batchMaxSizeKb.getNumber() != settings.getBatchMaxSizeKb() ||
+               batchMaxFiles.getNumber() != settings.getBatchMaxFiles() ||
+               enableAdaptiveTimeout.isSelected() != settings.isEnableAdaptiveTimeout() ||
+               enableHedging.isSelected() != settings.isEnableHedging() ||
+               enableDiffReview.isSelected() != settings.isEnableDiffReview() ||
+               diffContextLines.getNumber() != settings.getDiffContextLines() ||
+               maxReviewFileSizeKb.getNumber() != settings.getMaxReviewFileSizeKb() ||
+               !reviewExcludePatterns.getText().equals(settings.getReviewExcludePatterns()) ||
+               skipGeneratedFiles.isSelected() != settings.isSkipGeneratedFiles() ||
+               commitReviewBudgetMillis.getNumber() != settings.getCommitReviewBudgetMillis() ||
+               enableSpeculativeReview.isSelected() != settings.isEnableSpeculativeReview() ||
+               speculativeDebounceMillis.getNumber() != settings.getSpeculativeDebounceMillis() ||
+               speculativeMaxFilesPerMinute.getNumber() != settings.getSpeculativeMaxFilesPerMinute();
     }
 
     @Override
@@ -111,6 +237,32 @@ public class AiReviewSettingsConfigurable implements Configurable {
         settings.setEnableSecurityCheck(enableSecurityCheck.isSelected());
         settings.setEnablePerformanceCheck(enablePerformanceCheck.isSelected());
         settings.setAiMode(aiModeComboBox.getSelectedIndex());
+        settings.setEnableDiskCache(enableDiskCache.isSelected());
+        settings.setDiskCacheMaxSizeMb(diskCacheMaxSizeMb.getNumber());
+        settings.setMemoryCacheMaxSizeMb(memoryCacheMaxSizeMb.getNumber());
+        settings.setEnableGitBlobKeys(enableGitBlobKeys.isSelected());
+        settings.setEnableChunkCache(enableChunkCache.isSelected());
+        settings.setRemoteCacheUrl(remoteCacheUrl.getText().trim());
+        settings.setRemoteCacheReadOnly(remoteCacheReadOnly.isSelected());
+        settings.setRemoteCacheBudgetMillis(remoteCacheBudgetMillis.getNumber());
+        settings.setReviewConcurrency(reviewConcurrency.getNumber());
+        settings.setReviewQueueCapacity(reviewQueueCapacity.getNumber());
+        settings.setUseVirtualThreads(useVirtualThreads.isSelected());
+        settings.setVirtualThreadConcurrency(virtualThreadConcurrency.getNumber());
+        settings.setBatchWindowMillis(batchWindowMillis.getNumber());
+        settings.setBatchMaxSizeKb(batchMaxSizeKb.getNumber());
+        settings.setBatchMaxFiles(batchMaxFiles.getNumber());
+        settings.setEnableAdaptiveTimeout(enableAdaptiveTimeout.isSelected());
+        settings.setEnableHedging(enableHedging.isSelected());
+        settings.setEnableDiffReview(enableDiffReview.isSelected());
+        settings.setDiffContextLines(diffContextLines.getNumber());
+        settings.setMaxReviewFileSizeKb(maxReviewFileSizeKb.getNumber());
+        settings.setReviewExcludePatterns(reviewExcludePatterns.getText().trim());
+        settings.setSkipGeneratedFiles(skipGeneratedFiles.isSelected());
+        settings.setCommitReviewBudgetMillis(commitReviewBudgetMillis.getNumber());
+        settings.setEnableSpeculativeReview(enableSpeculativeReview.isSelected());
+        settings.setSpeculativeDebounceMillis(speculativeDebounceMillis.getNumber());
+        settings.setSpeculativeMaxFilesPerMinute(speculativeMaxFilesPerMinute.getNumber());
     }
 
     @Override
@@ -127,5 +279,31 @@ public class AiReviewSettingsConfigurable implements Configurable {
         enableSecurityCheck.setSelected(settings.isEnableSecurityCheck());
         enablePerformanceCheck.setSelected(settings.isEnablePerformanceCheck());
         aiModeComboBox.setSelectedIndex(settings.getAiMode());
+        enableDiskCache.setSelected(settings.isEnableDiskCache());
+        diskCacheMaxSizeMb.setNumber(settings.getDiskCacheMaxSizeMb());
+        memoryCacheMaxSizeMb.setNumber(settings.getMemoryCacheMaxSizeMb());
+        enableGitBlobKeys.setSelected(settings.isEnableGitBlobKeys());
+        enableChunkCache.setSelected(settings.isEnableChunkCache());
+        remoteCacheUrl.setText(settings.getRemoteCacheUrl());
+        remoteCacheReadOnly.setSelected(settings.isRemoteCacheReadOnly());
+        remoteCacheBudgetMillis.setNumber(settings.getRemoteCacheBudgetMillis());
+        reviewConcurrency.setNumber(settings.getReviewConcurrency());
+        reviewQueueCapacity.setNumber(settings.getReviewQueueCapacity());
+        useVirtualThreads.setSelected(settings.isUseVirtualThreads());
+        virtualThreadConcurrency.setNumber(settings.getVirtualThreadConcurrency());
+        batchWindowMillis.setNumber(settings.getBatchWindowMillis());
+        batchMaxSizeKb.setNumber(settings.getBatchMaxSizeKb());
+        batchMaxFiles.setNumber(settings.getBatchMaxFiles());
+        enableAdaptiveTimeout.setSelected(settings.isEnableAdaptiveTimeout());
+        enableHedging.setSelected(settings.isEnableHedging());
+        enableDiffReview.setSelected(settings.isEnableDiffReview());
+        diffContextLines.setNumber(settings.getDiffContextLines());
+        maxReviewFileSizeKb.setNumber(settings.getMaxReviewFileSizeKb());
+        reviewExcludePatterns.setText(settings.getReviewExcludePatterns());
+        skipGeneratedFiles.setSelected(settings.isSkipGeneratedFiles());
+        commitReviewBudgetMillis.setNumber(settings.getCommitReviewBudgetMillis());
+        enableSpeculativeReview.setSelected(settings.isEnableSpeculativeReview());
+        speculativeDebounceMillis.setNumber(settings.getSpeculativeDebounceMillis());
+        speculativeMaxFilesPerMinute.setNumber(settings.getSpeculativeMaxFilesPerMinute());
     }
 } 
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.renrui.presubmit.codereview.ui;
 
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogWrapper;
@@ -9,16 +11,25 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
 
 public class AiReviewDialog extends DialogWrapper {
     private static final Logger LOG = Logger.getInstance(AiReviewDialog.class);
     private final List<Issue> issues;
+    // 显示在列表上方的审查状态，例如超出时间预算后的降级说明
+    private final @Nullable String status;
+    private final DefaultListModel<Issue> model = new DefaultListModel<>();
     private boolean okClicked = false;
 
     public AiReviewDialog(Project project, List<Issue> issues) {
+        this(project, issues, null);
+    }
+
+    public AiReviewDialog(Project project, List<Issue> issues, @Nullable String status) {
         super(project);
-        this.issues = issues;
+        this.issues = new ArrayList<>(issues);
+        this.status = status;
         setTitle("代码审查结果");
         setSize(800, 600);
         init();
@@ -30,8 +41,7 @@ public class AiReviewDialog extends DialogWrapper {
         JPanel panel = new JPanel(new BorderLayout());
         
         // 创建问题列表
-        JList<Issue> issueList = new JList<>(new DefaultListModel<>());
-        DefaultListModel<Issue> model = (DefaultListModel<Issue>) issueList.getModel();
+        JList<Issue> issueList = new JList<>(model);
         for (Issue issue : issues) {
             model.addElement(issue);
             LOG.debug("添加问题到列表: " + issue.getType() + " - " + issue.getMessage());
@@ -83,6 +93,9 @@ public class AiReviewDialog extends DialogWrapper {
         splitPane.setDividerLocation(300);
 
         panel.add(splitPane, BorderLayout.CENTER);
+        if (status != null) {
+            panel.add(new JLabel(status), BorderLayout.NORTH);
+        }
         return panel;
     }
 
@@ -108,6 +121,22 @@ public class AiReviewDialog extends DialogWrapper {
         return panel;
     }
 
+    /**
+     * 追加审查过程中陆续返回的问题，可在任意线程调用
+     */
+    public void addIssues(List<Issue> newIssues) {
+        if (newIssues.isEmpty()) {
+            return;
+        }
+        ApplicationManager.getApplication().invokeLater(() -> {
+            for (Issue issue : newIssues) {
+                issues.add(issue);
+                model.addElement(issue);
+            }
+            LOG.debug("追加问题到列表，当前问题数: " + issues.size());
+        }, ModalityState.any());
+    }
+
     public boolean isOK() {
         return okClicked;
     }
@@ -0,0 +1,17 @@
+package com.renrui.review.cache;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 内容键提供者
+ * 在不读取文件内容的情况下给出能唯一标识文件内容的键
+ */
+public interface ContentKeyProvider {
+    /**
+     * 获取文件内容的键
+     * @param file 文件
+     * @return 内容键，无法确定时返回 null，由调用方自行计算hash
+     */
+    @Nullable String getContentKey(VirtualFile file);
+}
@@ -0,0 +1,351 @@
+package com.renrui.review.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 审查结果的磁盘二级缓存
+ * 以内容 hash 为键，采用追加写日志 + 压缩的方式持久化，IDE 重启后仍然有效。
+ * 索引在第一次访问时才加载，不影响项目打开速度。
+ */
+public class DiskReviewCache {
+    private static final Logger LOG = Logger.getInstance(DiskReviewCache.class);
+    private static final String LOG_FILE_NAME = "review-results.log";
+    private static final int RECORD_MAGIC = 0x52564331; // "RVC1"
+    private static final int TOMBSTONE = -1;
+    private static final int MAX_KEY_LENGTH = 1024;
+    // 日志文件中的无效数据超过有效数据时触发压缩
+    private static final double COMPACT_RATIO = 1.0;
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+    private final Path directory;
+    private final Path logFile;
+    private final long maxSizeBytes;
+
+    // 键 -> 记录位置，按访问顺序排列用于 LRU 淘汰
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+    private FileChannel channel;
+    // 有效记录的完整字节数（记录头 + 键 + 值），与日志文件大小同口径
+    private long liveBytes;
+    private boolean loaded;
+
+    /**
+     * @param directory 缓存目录
+     * @param maxSizeBytes 有效记录（含记录头和键）的最大字节数，超过后按最近最少使用淘汰
+     */
+    public DiskReviewCache(Path directory, long maxSizeBytes) {
+        this.directory = directory;
+        this.logFile = directory.resolve(LOG_FILE_NAME);
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * 读取缓存结果
+     * @param key 内容 hash
+     * @return 缓存的审查结果，不存在或读取失败时返回 null
+     */
+    public synchronized ReviewResult get(String key) {
+        if (!ensureLoaded()) {
+            return null;
+        }
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+            readFully(buffer, entry.valueOffset);
+            return ReviewResultSerializer.deserialize(buffer.array());
+        } catch (IOException e) {
+            LOG.warn("读取磁盘缓存失败: " + key, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存结果
+     * @param key 内容 hash
+     * @param result 审查结果
+     */
+    public synchronized void put(String key, ReviewResult result) {
+        if (!ensureLoaded() || key.length() > MAX_KEY_LENGTH) {
+            return;
+        }
+        try {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] value = ReviewResultSerializer.serialize(result);
+            if (recordLength(keyBytes.length, value.length) > maxSizeBytes) {
+                return;
+            }
+            long valueOffset = appendRecord(keyBytes, value);
+            Entry entry = new Entry(valueOffset, value.length, keyBytes.length);
+            Entry previous = index.put(key, entry);
+            if (previous != null) {
+                liveBytes -= previous.recordLength();
+            }
+            liveBytes += entry.recordLength();
+            evictIfNeeded();
+            compactIfNeeded();
+        } catch (IOException e) {
+            LOG.warn("写入磁盘缓存失败: " + key, e);
+        }
+    }
+
+    /**
+     * 删除缓存结果
+     */
+    public synchronized void remove(String key) {
+        if (!ensureLoaded()) {
+            return;
+        }
+        Entry entry = index.remove(key);
+        if (entry == null) {
+            return;
+        }
+        liveBytes -= entry.recordLength();
+        try {
+            appendTombstone(key);
+        } catch (IOException e) {
+            LOG.warn("写入删除标记失败: " + key, e);
+        }
+    }
+
+    public synchronized int size() {
+        return ensureLoaded() ? index.size() : 0;
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * 关闭日志文件
+     */
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("关闭磁盘缓存失败", e);
+            }
+            channel = null;
+        }
+        index.clear();
+        liveBytes = 0;
+        loaded = false;
+    }
+
+    /**
+     * 首次访问时打开日志并重建索引
+     */
+    private boolean ensureLoaded() {
+        if (loaded) {
+            return channel != null;
+        }
+        loaded = true;
+        try {
+            Files.createDirectories(directory);
+            channel = FileChannel.open(logFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            rebuildIndex();
+            LOG.info("磁盘缓存加载完成，条目数: " + index.size() + "，有效数据: " + liveBytes + " 字节");
+            return true;
+        } catch (IOException e) {
+            LOG.warn("打开磁盘缓存失败，将只使用内存缓存: " + logFile, e);
+            channel = null;
+            return false;
+        }
+    }
+
+    /**
+     * 顺序扫描日志，只读取记录头，遇到损坏的尾部记录时截断
+     */
+    private void rebuildIndex() throws IOException {
+        long fileSize = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(8);
+        while (position < fileSize) {
+            header.clear();
+            if (readFully(header, position) < 8 || header.getInt(0) != RECORD_MAGIC) {
+                break;
+            }
+            int keyLength = header.getInt(4);
+            if (keyLength <= 0 || keyLength > MAX_KEY_LENGTH || position + 8 + keyLength + 4 > fileSize) {
+                break;
+            }
+            ByteBuffer keyAndLength = ByteBuffer.allocate(keyLength + 4);
+            readFully(keyAndLength, position + 8);
+            String key = new String(keyAndLength.array(), 0, keyLength, StandardCharsets.UTF_8);
+            int valueLength = keyAndLength.getInt(keyLength);
+            long valueOffset = position + 8 + keyLength + 4;
+
+            if (valueLength == TOMBSTONE) {
+                Entry removed = index.remove(key);
+                if (removed != null) {
+                    liveBytes -= removed.recordLength();
+                }
+                position = valueOffset;
+                continue;
+            }
+            if (valueLength < 0 || valueOffset + valueLength > fileSize) {
+                break;
+            }
+            Entry entry = new Entry(valueOffset, valueLength, keyLength);
+            Entry previous = index.put(key, entry);
+            if (previous != null) {
+                liveBytes -= previous.recordLength();
+            }
+            liveBytes += entry.recordLength();
+            position = valueOffset + valueLength;
+        }
+        if (position < fileSize) {
+            LOG.warn("磁盘缓存尾部数据损坏，已截断: " + (fileSize - position) + " 字节");
+            channel.truncate(position);
+        }
+    }
+
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private long appendRecord(byte[] keyBytes, byte[] value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(recordLength(keyBytes.length, value.length));
+        buffer.putInt(RECORD_MAGIC).putInt(keyBytes.length).put(keyBytes).putInt(value.length).put(value);
+        buffer.flip();
+        long recordOffset = channel.size();
+        writeFully(buffer, recordOffset);
+        return recordOffset + 8 + keyBytes.length + 4;
+    }
+
+    private void appendTombstone(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + keyBytes.length + 4);
+        buffer.putInt(RECORD_MAGIC).putInt(keyBytes.length).put(keyBytes).putInt(TOMBSTONE);
+        buffer.flip();
+        writeFully(buffer, channel.size());
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /**
+     * 超过容量上限时淘汰最近最少使用的条目
+     */
+    private void evictIfNeeded() throws IOException {
+        Iterator<Map.Entry<String, Entry>> iterator = index.entrySet().iterator();
+        while (liveBytes > maxSizeBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            liveBytes -= eldest.getValue().recordLength();
+            appendTombstone(eldest.getKey());
+        }
+    }
+
+    /**
+     * 无效数据过多时重写日志文件，只保留有效条目
+     */
+    private void compactIfNeeded() throws IOException {
+        long fileSize = channel.size();
+        long deadBytes = fileSize - liveBytes;
+        if (deadBytes < MIN_COMPACT_BYTES || deadBytes < liveBytes * COMPACT_RATIO) {
+            return;
+        }
+
+        Path tempFile = directory.resolve(LOG_FILE_NAME + ".tmp");
+        LinkedHashMap<String, Entry> compacted = new LinkedHashMap<>(index.size() * 2, 0.75f, true);
+        try (FileChannel out = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (Map.Entry<String, Entry> e : index.entrySet()) {
+                byte[] keyBytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+                Entry entry = e.getValue();
+                ByteBuffer header = ByteBuffer.allocate(8 + keyBytes.length + 4);
+                header.putInt(RECORD_MAGIC).putInt(keyBytes.length).put(keyBytes).putInt(entry.length);
+                header.flip();
+                while (header.hasRemaining()) {
+                    position += out.write(header, position);
+                }
+                long valueOffset = position;
+                long copied = 0;
+                while (copied < entry.length) {
+                    copied += channel.transferTo(entry.valueOffset + copied, entry.length - copied, out.position(position + copied));
+                }
+                position += entry.length;
+                compacted.put(e.getKey(), new Entry(valueOffset, entry.length, keyBytes.length));
+            }
+            out.force(false);
+        }
+
+        channel.close();
+        try {
+            Files.move(tempFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 替换失败时原日志仍然完整，重新打开后沿用原索引
+            Files.deleteIfExists(tempFile);
+            reopenChannel();
+            throw e;
+        }
+        reopenChannel();
+        index.clear();
+        index.putAll(compacted);
+        LOG.info("磁盘缓存压缩完成: " + fileSize + " -> " + channel.size() + " 字节");
+    }
+
+    /**
+     * 重新打开日志文件，失败时放弃磁盘缓存，避免后续读写使用已关闭的通道
+     */
+    private void reopenChannel() throws IOException {
+        try {
+            channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            channel = null;
+            index.clear();
+            liveBytes = 0;
+            throw e;
+        }
+    }
+
+    private static int recordLength(int keyLength, int valueLength) {
+        return 8 + keyLength + 4 + valueLength;
+    }
+
+    private static final class Entry {
+        private final long valueOffset;
+        private final int length;
+        private final int keyLength;
+
+        private Entry(long valueOffset, int length, int keyLength) {
+            this.valueOffset = valueOffset;
+            this.length = length;
+            this.keyLength = keyLength;
+        }
+
+        private long recordLength() {
+            return DiskReviewCache.recordLength(keyLength, length);
+        }
+    }
+}
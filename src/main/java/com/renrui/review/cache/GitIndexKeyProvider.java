@@ -0,0 +1,230 @@
+package com.renrui.review.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于 git 暂存区的内容键提供者
+ * 直接读取 .git/index 中记录的 blob 对象 ID 作为内容键，工作区文件与暂存区一致时无需再计算hash。
+ * 相同内容在不同克隆中的 blob ID 相同，因此键可以在团队间共享。
+ */
+public class GitIndexKeyProvider implements ContentKeyProvider {
+    private static final Logger LOG = Logger.getInstance(GitIndexKeyProvider.class);
+    private static final String KEY_PREFIX = "blob:";
+    private static final int INDEX_SIGNATURE = 0x44495243; // "DIRC"
+    private static final int REGULAR_FILE_MASK = 0170000;
+    private static final int REGULAR_FILE = 0100000;
+    private static final int EXTENDED_FLAG = 0x4000;
+    private static final int STAGE_MASK = 0x3000;
+    private static final int NAME_MASK = 0x0FFF;
+
+    // 仓库根目录 -> 暂存区快照
+    private final Map<Path, IndexSnapshot> snapshots = new ConcurrentHashMap<>();
+    // 目录 -> 所在仓库根目录，不在仓库中时为空路径
+    private final Map<Path, Path> repositoryRoots = new ConcurrentHashMap<>();
+
+    @Override
+    public @Nullable String getContentKey(VirtualFile file) {
+        if (!file.isInLocalFileSystem() || file.isDirectory()) {
+            return null;
+        }
+        try {
+            Path filePath = file.toNioPath();
+            Path root = findRepositoryRoot(filePath.getParent());
+            if (root == null) {
+                return null;
+            }
+            IndexSnapshot snapshot = loadSnapshot(root);
+            if (snapshot == null) {
+                return null;
+            }
+            String relativePath = root.relativize(filePath).toString().replace('\\', '/');
+            IndexEntry entry = snapshot.entries.get(relativePath);
+            if (entry == null || !entry.matches(file, snapshot.indexModifiedMillis)) {
+                return null;
+            }
+            return KEY_PREFIX + entry.objectId;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.debug("读取 git 暂存区失败，回退到本地hash: " + file.getPath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 向上查找包含 .git 的目录
+     */
+    private @Nullable Path findRepositoryRoot(@Nullable Path directory) {
+        if (directory == null) {
+            return null;
+        }
+        Path root = repositoryRoots.computeIfAbsent(directory, dir -> {
+            for (Path current = dir; current != null; current = current.getParent()) {
+                if (Files.exists(current.resolve(".git"))) {
+                    return current;
+                }
+            }
+            return Path.of("");
+        });
+        return root.toString().isEmpty() ? null : root;
+    }
+
+    /**
+     * 加载暂存区快照，index 文件未变化时复用上次的解析结果
+     */
+    private @Nullable IndexSnapshot loadSnapshot(Path root) throws IOException {
+        Path indexFile = resolveGitDir(root).resolve("index");
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+        long modified = Files.getLastModifiedTime(indexFile).toMillis();
+        long size = Files.size(indexFile);
+        IndexSnapshot snapshot = snapshots.get(root);
+        if (snapshot != null && snapshot.indexModifiedMillis == modified && snapshot.indexSize == size) {
+            return snapshot;
+        }
+
+        Map<String, IndexEntry> entries = parseIndex(indexFile);
+        if (entries == null) {
+            snapshots.remove(root);
+            return null;
+        }
+        snapshot = new IndexSnapshot(modified, size, entries);
+        snapshots.put(root, snapshot);
+        LOG.debug("已加载 git 暂存区: " + indexFile + "，条目数: " + entries.size());
+        return snapshot;
+    }
+
+    /**
+     * 支持工作树场景下 .git 为指向实际目录的文件
+     */
+    private Path resolveGitDir(Path root) throws IOException {
+        Path dotGit = root.resolve(".git");
+        if (Files.isRegularFile(dotGit)) {
+            String content = Files.readString(dotGit, StandardCharsets.UTF_8).trim();
+            if (content.startsWith("gitdir:")) {
+                return root.resolve(content.substring("gitdir:".length()).trim()).normalize();
+            }
+        }
+        return dotGit;
+    }
+
+    /**
+     * 解析 index 文件，只支持版本 2 和 3，版本 4 的路径压缩格式直接放弃
+     */
+    private @Nullable Map<String, IndexEntry> parseIndex(Path indexFile) throws IOException {
+        try (InputStream raw = Files.newInputStream(indexFile);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 64 * 1024))) {
+            if (in.readInt() != INDEX_SIGNATURE) {
+                return null;
+            }
+            int version = in.readInt();
+            if (version != 2 && version != 3) {
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, IndexEntry> entries = new HashMap<>(count * 2);
+            byte[] objectId = new byte[20];
+            for (int i = 0; i < count; i++) {
+                in.skipBytes(8);                            // ctime
+                int mtimeSeconds = in.readInt();
+                int mtimeNanos = in.readInt();
+                in.skipBytes(8);                            // dev, ino
+                int mode = in.readInt();
+                in.skipBytes(8);                            // uid, gid
+                long size = in.readInt() & 0xFFFFFFFFL;
+                in.readFully(objectId);
+                int flags = in.readUnsignedShort();
+                int fixedLength = 62;
+                if ((flags & EXTENDED_FLAG) != 0) {
+                    in.skipBytes(2);
+                    fixedLength += 2;
+                }
+
+                int nameLength = flags & NAME_MASK;
+                byte[] name;
+                if (nameLength < NAME_MASK) {
+                    name = new byte[nameLength];
+                    in.readFully(name);
+                } else {
+                    name = readUntilNul(in);
+                    nameLength = name.length;
+                }
+                // 条目以 NUL 结尾并补齐到 8 字节
+                int entryLength = (fixedLength + nameLength + 8) & ~7;
+                in.skipBytes(entryLength - fixedLength - nameLength - (nameLength < NAME_MASK ? 0 : 1));
+
+                if ((flags & STAGE_MASK) != 0 || (mode & REGULAR_FILE_MASK) != REGULAR_FILE) {
+                    continue;
+                }
+                long mtimeMillis = (mtimeSeconds & 0xFFFFFFFFL) * 1000L + mtimeNanos / 1_000_000;
+                entries.put(new String(name, StandardCharsets.UTF_8),
+                        new IndexEntry(toHex(objectId), mtimeMillis, size));
+            }
+            return entries;
+        }
+    }
+
+    private static byte[] readUntilNul(DataInputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) > 0) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static final class IndexSnapshot {
+        private final long indexModifiedMillis;
+        private final long indexSize;
+        private final Map<String, IndexEntry> entries;
+
+        private IndexSnapshot(long indexModifiedMillis, long indexSize, Map<String, IndexEntry> entries) {
+            this.indexModifiedMillis = indexModifiedMillis;
+            this.indexSize = indexSize;
+            this.entries = entries;
+        }
+    }
+
+    private static final class IndexEntry {
+        private final String objectId;
+        private final long mtimeMillis;
+        private final long size;
+
+        private IndexEntry(String objectId, long mtimeMillis, long size) {
+            this.objectId = objectId;
+            this.mtimeMillis = mtimeMillis;
+            this.size = size;
+        }
+
+        /**
+         * 工作区文件的大小和修改时间与暂存区一致时认为内容相同。
+         * 与 git 相同，修改时间不早于 index 文件的条目视为不可信（racy git）。
+         */
+        private boolean matches(VirtualFile file, long indexModifiedMillis) {
+            return size == file.getLength()
+                    && mtimeMillis == file.getTimeStamp()
+                    && mtimeMillis / 1000 < indexModifiedMillis / 1000;
+        }
+    }
+}
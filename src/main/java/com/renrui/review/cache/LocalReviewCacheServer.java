@@ -0,0 +1,103 @@
+package com.renrui.review.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 可嵌入的本地远程缓存服务
+ * 实现与 {@link RemoteReviewCache} 相同的 GET/PUT 协议，数据保存在内存中，
+ * 用于在没有网络的环境下测试或在局域网内临时共享缓存。
+ */
+public class LocalReviewCacheServer implements AutoCloseable {
+    private static final Logger LOG = Logger.getInstance(LocalReviewCacheServer.class);
+    private static final String CONTEXT_PATH = "/cache/";
+    private static final int MAX_ENTRY_BYTES = 16 * 1024 * 1024;
+
+    private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param port 监听端口，0 表示随机端口
+     */
+    public LocalReviewCacheServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext(CONTEXT_PATH, this::handle);
+        this.executor = Executors.newFixedThreadPool(4);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("本地审查缓存服务已启动: " + getBaseUrl());
+    }
+
+    /**
+     * 供 {@link RemoteReviewCache} 使用的地址
+     */
+    public String getBaseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + CONTEXT_PATH;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String key = URI.create(exchange.getRequestURI().getRawPath()).getPath().substring(CONTEXT_PATH.length());
+            if (key.isEmpty()) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> {
+                    byte[] data = entries.get(key);
+                    if (data == null) {
+                        exchange.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                    exchange.sendResponseHeaders(200, data.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(data);
+                    }
+                }
+                case "PUT" -> {
+                    byte[] data;
+                    try (InputStream in = exchange.getRequestBody()) {
+                        data = in.readNBytes(MAX_ENTRY_BYTES + 1);
+                    }
+                    if (data.length > MAX_ENTRY_BYTES) {
+                        exchange.sendResponseHeaders(413, -1);
+                        return;
+                    }
+                    entries.put(key, data);
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                default -> exchange.sendResponseHeaders(405, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.renrui.review.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.intellij.openapi.diagnostic.Logger;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 团队共享的远程审查缓存
+ * 类似 Gradle 构建缓存，以内容键通过 HTTP GET/PUT 读写序列化后的审查结果：
+ * GET {baseUrl}/{key} 返回 200 表示命中、404 表示未命中，PUT {baseUrl}/{key} 写入结果。
+ * 每次读取都受时间预算限制，请求失败后会暂停访问一段时间，未命中的键在短时间内不再查询，避免拖慢提交。
+ */
+public class RemoteReviewCache {
+    private static final Logger LOG = Logger.getInstance(RemoteReviewCache.class);
+    private static final MediaType OCTET_STREAM = MediaType.get("application/octet-stream");
+    // 请求失败后暂停访问远程缓存的时间
+    private static final Duration FAILURE_BACKOFF = Duration.ofSeconds(30);
+    // 未命中的键在该时间内直接视为未命中，同一内容在提交前后反复查询时不再访问网络
+    private static final Duration MISS_EXPIRE_AFTER = Duration.ofMinutes(1);
+    private static final int MAX_REMEMBERED_MISSES = 10000;
+    // 一次提交的多个读取并发进行，而不是按 OkHttp 默认的每个主机 5 个排队
+    private static final int MAX_CONCURRENT_REQUESTS = 16;
+
+    private final HttpUrl baseUrl;
+    private final boolean readOnly;
+    private final OkHttpClient client;
+    private final Duration budget;
+    private final Cache<String, Boolean> recentMisses = Caffeine.newBuilder()
+            .maximumSize(MAX_REMEMBERED_MISSES)
+            .expireAfterWrite(MISS_EXPIRE_AFTER)
+            .build();
+    private volatile long disabledUntilNanos;
+
+    /**
+     * @param baseUrl 远程缓存地址
+     * @param readOnly 只读模式，用于 CI 预先填充的缓存
+     * @param budget 单次读取允许占用的最长时间
+     */
+    public RemoteReviewCache(String baseUrl, boolean readOnly, Duration budget) {
+        HttpUrl url = HttpUrl.parse(baseUrl);
+        if (url == null) {
+            throw new IllegalArgumentException("无效的远程缓存地址: " + baseUrl);
+        }
+        this.baseUrl = url;
+        this.readOnly = readOnly;
+        this.budget = budget;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_REQUESTS);
+        this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .callTimeout(budget.toMillis(), TimeUnit.MILLISECONDS)
+                .connectTimeout(budget.toMillis(), TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false)
+                .build();
+    }
+
+    /**
+     * 读取远程缓存，超出时间预算或失败时视为未命中
+     */
+    public @Nullable ReviewResult get(String key) {
+        return getAsync(key).join();
+    }
+
+    /**
+     * 异步读取远程缓存，不阻塞调用方，超出时间预算或失败时以 null 完成
+     * 调用方可以同时发起多个读取，只等待到自己的截止时间，之后到达的结果不再需要等待
+     */
+    public CompletableFuture<ReviewResult> getAsync(String key) {
+        if (isBackingOff() || recentMisses.getIfPresent(key) != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<ReviewResult> future = new CompletableFuture<>();
+        Request request = new Request.Builder().url(urlFor(key)).get().build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (response) {
+                    if (response.code() == 404) {
+                        recentMisses.put(key, Boolean.TRUE);
+                        future.complete(null);
+                        return;
+                    }
+                    ResponseBody body = response.body();
+                    if (!response.isSuccessful() || body == null) {
+                        throw new IOException("远程缓存读取失败: " + response.code());
+                    }
+                    future.complete(ReviewResultSerializer.deserialize(body.bytes()));
+                } catch (IOException e) {
+                    RemoteReviewCache.this.onFailure("读取", key, e);
+                    future.complete(null);
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                RemoteReviewCache.this.onFailure("读取", key, e);
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 异步写入远程缓存，不阻塞调用方
+     */
+    public void put(String key, ReviewResult result) {
+        if (readOnly || isBackingOff()) {
+            return;
+        }
+        recentMisses.invalidate(key);
+        byte[] data;
+        try {
+            data = ReviewResultSerializer.serialize(result);
+        } catch (IOException e) {
+            LOG.warn("序列化审查结果失败: " + key, e);
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(urlFor(key))
+                .put(RequestBody.create(data, OCTET_STREAM))
+                .build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        LOG.debug("远程缓存写入被拒绝: " + response.code() + " " + key);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                RemoteReviewCache.this.onFailure("写入", key, e);
+            }
+        });
+    }
+
+    /**
+     * 单次读取允许占用的最长时间
+     */
+    public Duration getBudget() {
+        return budget;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private HttpUrl urlFor(String key) {
+        return baseUrl.newBuilder().addPathSegment(key).build();
+    }
+
+    private boolean isBackingOff() {
+        return System.nanoTime() - disabledUntilNanos < 0;
+    }
+
+    private void onFailure(String operation, String key, IOException e) {
+        disabledUntilNanos = System.nanoTime() + FAILURE_BACKOFF.toNanos();
+        LOG.info("远程缓存" + operation + "失败，暂停访问 " + FAILURE_BACKOFF.getSeconds() + " 秒: " + key + " - " + e.getMessage());
+    }
+}
@@ -2,51 +2,146 @@ package com.renrui.review.cache;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.LowMemoryWatcher;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.intellij.openapi.vfs.VirtualFile;
-import org.apache.commons.codec.digest.DigestUtils;
+import com.renrui.presubmit.codereview.settings.AiReviewSettings;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 public class ReviewCache {
-    private static final int MAX_CACHE_SIZE = 1000;
+    private static final Logger LOG = Logger.getInstance(ReviewCache.class);
+    // 指纹索引每个条目（路径、hash 字符串及缓存节点）的估算大小
+    private static final long FINGERPRINT_ENTRY_BYTES = 512;
+    // 指纹索引至少容纳的文件数，大仓库全量审查时指纹不会被频繁挤出而重新计算hash
+    private static final int MIN_FINGERPRINT_ENTRIES = 20_000;
+    private static final long DEFAULT_MEMORY_BUDGET_BYTES = 64L * 1024 * 1024;
     private static final Duration CACHE_EXPIRE_AFTER = Duration.ofHours(24);
+    // 超时放行的结果只短暂缓存，避免一次慢请求把问题隐藏一整天
+    private static final Duration NEGATIVE_CACHE_EXPIRE_AFTER = Duration.ofMinutes(2);
+    private static final String DISK_CACHE_DIR = "pre-submit-code-review/review-cache";
+    private static final String KEY_SEPARATOR = "|";
+    // 内置规则逻辑变化时递增，使旧的审查结果失效
+    private static final int RULE_SET_VERSION = 1;
 
-    private final Cache<String, String> fileHashCache;
+    // 文件路径 -> 文件指纹（修改戳 + 内容hash）的索引，容量按内存预算的 1/4 估算
+    private final Cache<String, FileFingerprint> fileHashCache;
+    // 内容hash + 后端 + 规则集版本 -> 审查结果，相同内容只审查一次，按估算的堆占用淘汰
     private final Cache<String, ReviewResult> reviewResultCache;
-    
-    public ReviewCache() {
+    private final long memoryBudgetBytes;
+    // IDE 内存不足时释放一半审查结果，需要强引用持有
+    private final LowMemoryWatcher lowMemoryWatcher;
+    // 磁盘二级缓存，为 null 时只使用内存缓存
+    private final @Nullable DiskReviewCache diskCache;
+    // 团队共享的远程缓存，为 null 时不启用
+    private final @Nullable RemoteReviewCache remoteCache;
+    private final Supplier<String> namespaceSupplier;
+    // 优先使用的内容键来源（如 git blob ID），为 null 时总是自行计算hash
+    private final @Nullable ContentKeyProvider keyProvider;
+
+    // 统计计数
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder diskMisses = new LongAdder();
+    private final LongAdder diskLoadNanos = new LongAdder();
+    private final LongAdder hashCount = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder fingerprintHits = new LongAdder();
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder remoteMisses = new LongAdder();
+
+    private ReviewCache(Builder builder) {
+        this.diskCache = builder.diskCache;
+        this.remoteCache = builder.remoteCache;
+        this.namespaceSupplier = builder.namespaceSupplier;
+        this.keyProvider = builder.keyProvider;
+        this.memoryBudgetBytes = builder.memoryBudgetBytes;
         this.fileHashCache = Caffeine.newBuilder()
-                .maximumSize(MAX_CACHE_SIZE)
+                .maximumSize(fingerprintCapacity(memoryBudgetBytes))
                 .expireAfterWrite(CACHE_EXPIRE_AFTER)
+                .recordStats()
                 .build();
                 
         this.reviewResultCache = Caffeine.newBuilder()
-                .maximumSize(MAX_CACHE_SIZE)
-                .expireAfterWrite(CACHE_EXPIRE_AFTER)
+                .maximumWeight(memoryBudgetBytes)
+                .weigher((String key, ReviewResult result) -> result.estimateRetainedSize())
+                .expireAfter(new ResultExpiry())
+                .recordStats()
                 .build();
+        this.lowMemoryWatcher = LowMemoryWatcher.register(this::shrink);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 指纹索引的条目上限：内存预算的 1/4 按每条 {@link #FINGERPRINT_ENTRY_BYTES} 换算，
+     * 不少于 {@link #MIN_FINGERPRINT_ENTRIES}
+     */
+    static long fingerprintCapacity(long memoryBudgetBytes) {
+        return Math.max(MIN_FINGERPRINT_ENTRIES, memoryBudgetBytes / 4 / FINGERPRINT_ENTRY_BYTES);
+    }
+
+    /**
+     * 根据插件设置创建缓存，启用磁盘缓存时结果保存在 IDE 系统目录下
+     */
+    public static ReviewCache createPersistent() {
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        Builder builder = builder()
+                .memoryBudgetBytes(settings.getMemoryCacheMaxSizeMb() * 1024L * 1024L);
+        if (settings.isEnableDiskCache()) {
+            Path directory = Path.of(PathManager.getSystemPath(), DISK_CACHE_DIR);
+            long maxSizeBytes = settings.getDiskCacheMaxSizeMb() * 1024L * 1024L;
+            builder.diskCache(new DiskReviewCache(directory, maxSizeBytes));
+        }
+        if (settings.isEnableGitBlobKeys()) {
+            builder.keyProvider(new GitIndexKeyProvider());
+        }
+        if (StringUtils.isNotBlank(settings.getRemoteCacheUrl())) {
+            try {
+                builder.remoteCache(new RemoteReviewCache(settings.getRemoteCacheUrl(),
+                        settings.isRemoteCacheReadOnly(), Duration.ofMillis(settings.getRemoteCacheBudgetMillis())));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("远程缓存配置无效，已忽略", e);
+            }
+        }
+        return builder.build();
     }
 
     /**
      * 检查文件是否需要重新审查
+     * 内容相同且审查后端、规则集未变化的文件可以直接复用已有结果
      * @param file 待检查的文件
      * @return true 如果文件需要重新审查
      */
     public boolean needsReview(VirtualFile file) {
-        try {
-            String currentHash = calculateFileHash(file);
-            String cachedHash = fileHashCache.getIfPresent(file.getPath());
-            
-            if (cachedHash == null || !cachedHash.equals(currentHash)) {
-                fileHashCache.put(file.getPath(), currentHash);
-                return true;
-            }
-            
-            return false;
-        } catch (IOException e) {
-            return true;
-        }
+        String hash = currentHash(file);
+        return hash == null || lookup(resultKey(hash)) == null;
     }
 
     /**
@@ -55,7 +150,24 @@ public class ReviewCache {
      * @return 缓存的审查结果，如果没有缓存则返回null
      */
     public ReviewResult getCachedResult(VirtualFile file) {
-        return reviewResultCache.getIfPresent(file.getPath());
+        String hash = currentHash(file);
+        return hash == null ? null : lookup(resultKey(hash));
+    }
+
+    /**
+     * 按内容hash批量获取审查结果，一次审查或提交的所有文件共用远程缓存的一个截止时间
+     * @param contentHashes 内容hash
+     * @return 命中的内容hash -> 审查结果
+     */
+    public Map<String, ReviewResult> getCachedResults(Collection<String> contentHashes) {
+        String namespace = namespaceSupplier.get();
+        Map<String, String> hashByKey = new LinkedHashMap<>();
+        for (String contentHash : contentHashes) {
+            hashByKey.put(contentHash + KEY_SEPARATOR + namespace, contentHash);
+        }
+        Map<String, ReviewResult> results = new HashMap<>();
+        lookupAll(hashByKey.keySet()).forEach((key, result) -> results.put(hashByKey.get(key), result));
+        return results;
     }
 
     /**
@@ -64,22 +176,346 @@ public class ReviewCache {
      * @param result 审查结果
      */
     public void cacheResult(VirtualFile file, ReviewResult result) {
-        reviewResultCache.put(file.getPath(), result);
+        String hash = currentHash(file);
+        if (hash != null) {
+            cacheResult(hash, result);
+        }
+    }
+
+    /**
+     * 按内容hash缓存审查结果，用于审查期间文件可能已被修改的场景
+     * 超时结果只保存在内存中，并使用较短的过期时间
+     * @param contentHash 审查时的内容hash，见 {@link #getContentHash(VirtualFile)}
+     * @param result 审查结果
+     */
+    public void cacheResult(String contentHash, ReviewResult result) {
+        String key = resultKey(contentHash);
+        reviewResultCache.put(key, result);
+        if (result.isTimeout()) {
+            return;
+        }
+        if (diskCache != null) {
+            diskCache.put(key, result);
+        }
+        if (remoteCache != null) {
+            remoteCache.put(key, result);
+        }
+    }
+
+    /**
+     * 获取文件当前内容的hash
+     * @return 内容hash，读取失败时返回 null
+     */
+    public @Nullable String getContentHash(VirtualFile file) {
+        return currentHash(file);
+    }
+
+    /**
+     * 计算一段审查内容的hash，用于审查的不是磁盘上的文件本身时（diff 片段、编辑器中未保存的内容）
+     */
+    public String getContentHash(CharSequence content) {
+        long start = System.nanoTime();
+        String hash = Hashing.murmur3_128().hashString(content, StandardCharsets.UTF_8).toString();
+        hashNanos.add(System.nanoTime() - start);
+        hashCount.increment();
+        return hash;
+    }
+
+    /**
+     * 依次查询内存缓存、磁盘缓存和远程缓存，下层命中时回填上层缓存
+     */
+    private @Nullable ReviewResult lookup(String key) {
+        return lookupAll(List.of(key)).get(key);
+    }
+
+    /**
+     * 批量查询，内存和磁盘未命中的键并发查询远程缓存
+     * 所有远程读取共用一个截止时间（远程缓存的时间预算），不随文件数增加；
+     * 截止后到达的结果仍会回填内存和磁盘缓存，供下次使用
+     * @return 命中的键 -> 审查结果
+     */
+    private Map<String, ReviewResult> lookupAll(Collection<String> keys) {
+        Map<String, ReviewResult> results = new HashMap<>();
+        Map<String, CompletableFuture<ReviewResult>> remoteReads = new LinkedHashMap<>();
+        for (String key : keys) {
+            ReviewResult result = reviewResultCache.getIfPresent(key);
+            if (result == null && diskCache != null) {
+                long start = System.nanoTime();
+                result = diskCache.get(key);
+                diskLoadNanos.add(System.nanoTime() - start);
+                if (result != null) {
+                    diskHits.increment();
+                    reviewResultCache.put(key, result);
+                } else {
+                    diskMisses.increment();
+                }
+            }
+            if (result != null) {
+                results.put(key, result);
+            } else if (remoteCache != null) {
+                remoteReads.put(key, remoteCache.getAsync(key));
+            }
+        }
+        if (remoteReads.isEmpty()) {
+            return results;
+        }
+
+        long deadlineNanos = System.nanoTime() + remoteCache.getBudget().toNanos();
+        for (Map.Entry<String, CompletableFuture<ReviewResult>> entry : remoteReads.entrySet()) {
+            String key = entry.getKey();
+            entry.getValue().thenAccept(result -> {
+                if (result != null) {
+                    reviewResultCache.put(key, result);
+                    if (diskCache != null) {
+                        diskCache.put(key, result);
+                    }
+                }
+            });
+            ReviewResult result = awaitRemote(entry.getValue(), deadlineNanos);
+            if (result != null) {
+                remoteHits.increment();
+                results.put(key, result);
+            } else {
+                remoteMisses.increment();
+            }
+        }
+        return results;
+    }
+
+    private static @Nullable ReviewResult awaitRemote(CompletableFuture<ReviewResult> read, long deadlineNanos) {
+        try {
+            return read.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 审查结果的键：内容hash + 审查后端 + 规则集版本
+     */
+    private String resultKey(String contentHash) {
+        return contentHash + KEY_SEPARATOR + namespaceSupplier.get();
+    }
+
+    /**
+     * 根据当前设置生成键的命名空间，切换后端或调整规则后旧结果自然失效
+     * 其他按内容缓存审查结果的地方（例如代码块缓存）也应把它加入键中
+     */
+    public static String currentNamespace() {
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        int ruleFlags = (settings.isEnablePunctuationCheck() ? 1 : 0)
+                | (settings.isEnableBugDetection() ? 1 << 1 : 0)
+                | (settings.isEnableSecurityCheck() ? 1 << 2 : 0)
+                | (settings.isEnablePerformanceCheck() ? 1 << 3 : 0)
+                | (settings.isEnableSystemOutCheck() ? 1 << 4 : 0)
+                | (settings.isEnableMessagePunctuationCheck() ? 1 << 5 : 0)
+                | (settings.isEnableTodoCheck() ? 1 << 6 : 0);
+        return settings.getReviewMode().name() + KEY_SEPARATOR + RULE_SET_VERSION + "." + ruleFlags;
     }
 
     /**
-     * 计算文件的hash值
+     * 获取文件当前内容的hash
+     * 修改戳、时间戳和长度都未变化时直接信任上次计算的值，
+     * 否则优先使用内容键提供者（如 git blob ID），最后才读取文件计算
+     */
+    private @Nullable String currentHash(VirtualFile file) {
+        FileFingerprint cached = fileHashCache.getIfPresent(file.getPath());
+        if (cached != null && cached.matches(file)) {
+            fingerprintHits.increment();
+            return cached.hash;
+        }
+        // 先记录文件状态再计算hash，计算期间文件被修改时下次会重新计算
+        long modificationStamp = file.getModificationStamp();
+        long timeStamp = file.getTimeStamp();
+        long length = file.getLength();
+        try {
+            String hash = keyProvider != null ? keyProvider.getContentKey(file) : null;
+            if (hash == null) {
+                long start = System.nanoTime();
+                hash = calculateFileHash(file);
+                hashNanos.add(System.nanoTime() - start);
+                hashCount.increment();
+            }
+            fileHashCache.put(file.getPath(), new FileFingerprint(modificationStamp, timeStamp, length, hash));
+            return hash;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 流式计算文件的 128 位 hash 值，不把整个文件读入内存
      */
     private String calculateFileHash(VirtualFile file) throws IOException {
-        byte[] content = file.contentsToByteArray();
-        return DigestUtils.md5Hex(content);
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        try (InputStream in = file.getInputStream()) {
+            ByteStreams.copy(in, Funnels.asOutputStream(hasher));
+        }
+        return hasher.hash().toString();
     }
 
     /**
      * 清除指定文件的缓存
      */
     public void invalidateCache(VirtualFile file) {
+        FileFingerprint fingerprint = fileHashCache.getIfPresent(file.getPath());
         fileHashCache.invalidate(file.getPath());
-        reviewResultCache.invalidate(file.getPath());
+        if (fingerprint != null) {
+            String key = resultKey(fingerprint.hash);
+            reviewResultCache.invalidate(key);
+            if (diskCache != null) {
+                diskCache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 内存不足时淘汰一半审查结果，之后恢复原有上限；磁盘缓存中的结果不受影响
+     */
+    private void shrink() {
+        reviewResultCache.policy().eviction().ifPresent(eviction -> {
+            long weightedSize = eviction.weightedSize().orElse(0L);
+            LOG.info("IDE 内存不足，释放审查结果缓存: " + weightedSize + " 字节的一半");
+            eviction.setMaximum(weightedSize / 2);
+            reviewResultCache.cleanUp();
+            eviction.setMaximum(memoryBudgetBytes);
+        });
+    }
+
+    /**
+     * 获取缓存统计快照
+     */
+    public ReviewCacheStats getStats() {
+        CacheStats resultStats = reviewResultCache.stats();
+        CacheStats fingerprintStats = fileHashCache.stats();
+        return new ReviewCacheStats(
+                resultStats.hitCount(),
+                resultStats.missCount(),
+                resultStats.evictionCount(),
+                diskHits.sum(),
+                diskMisses.sum(),
+                diskLoadNanos.sum(),
+                hashCount.sum(),
+                hashNanos.sum(),
+                fingerprintHits.sum(),
+                fingerprintStats.evictionCount(),
+                fileHashCache.estimatedSize(),
+                remoteHits.sum(),
+                remoteMisses.sum(),
+                reviewResultCache.estimatedSize());
+    }
+
+    /**
+     * 释放磁盘缓存占用的文件句柄
+     */
+    public void dispose() {
+        lowMemoryWatcher.stop();
+        if (diskCache != null) {
+            diskCache.close();
+        }
+    }
+
+    /**
+     * 缓存的构建器，未设置的层级不启用，默认只有内存缓存
+     */
+    public static final class Builder {
+        private @Nullable DiskReviewCache diskCache;
+        private @Nullable RemoteReviewCache remoteCache;
+        private Supplier<String> namespaceSupplier = ReviewCache::currentNamespace;
+        private @Nullable ContentKeyProvider keyProvider;
+        private long memoryBudgetBytes = DEFAULT_MEMORY_BUDGET_BYTES;
+
+        private Builder() {
+        }
+
+        /**
+         * 磁盘二级缓存
+         */
+        public Builder diskCache(@Nullable DiskReviewCache diskCache) {
+            this.diskCache = diskCache;
+            return this;
+        }
+
+        /**
+         * 团队共享的远程缓存
+         */
+        public Builder remoteCache(@Nullable RemoteReviewCache remoteCache) {
+            this.remoteCache = remoteCache;
+            return this;
+        }
+
+        /**
+         * 提供审查后端和规则集版本，作为结果键的一部分，默认取自插件设置
+         */
+        public Builder namespace(Supplier<String> namespaceSupplier) {
+            this.namespaceSupplier = namespaceSupplier;
+            return this;
+        }
+
+        /**
+         * 内容键提供者，无法提供时回退到本地hash
+         */
+        public Builder keyProvider(@Nullable ContentKeyProvider keyProvider) {
+            this.keyProvider = keyProvider;
+            return this;
+        }
+
+        /**
+         * 内存中审查结果的堆占用上限
+         */
+        public Builder memoryBudgetBytes(long memoryBudgetBytes) {
+            this.memoryBudgetBytes = memoryBudgetBytes;
+            return this;
+        }
+
+        public ReviewCache build() {
+            return new ReviewCache(this);
+        }
+    }
+
+    /**
+     * 正常结果与超时结果使用不同的过期时间
+     */
+    private static final class ResultExpiry implements Expiry<String, ReviewResult> {
+        @Override
+        public long expireAfterCreate(String key, ReviewResult result, long currentTime) {
+            return (result.isTimeout() ? NEGATIVE_CACHE_EXPIRE_AFTER : CACHE_EXPIRE_AFTER).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, ReviewResult result, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, result, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, ReviewResult result, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * 计算hash时文件的状态，用于判断内容是否可能发生变化
+     */
+    private static final class FileFingerprint {
+        private final long modificationStamp;
+        private final long timeStamp;
+        private final long length;
+        private final String hash;
+
+        private FileFingerprint(long modificationStamp, long timeStamp, long length, String hash) {
+            this.modificationStamp = modificationStamp;
+            this.timeStamp = timeStamp;
+            this.length = length;
+            this.hash = hash;
+        }
+
+        private boolean matches(VirtualFile file) {
+            return modificationStamp == file.getModificationStamp()
+                    && timeStamp == file.getTimeStamp()
+                    && length == file.getLength();
+        }
     }
-} 
\ No newline at end of file
+}
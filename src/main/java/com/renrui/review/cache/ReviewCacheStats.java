@@ -0,0 +1,97 @@
+package com.renrui.review.cache;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * 审查缓存统计快照
+ */
+public class ReviewCacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long diskHitCount;
+    private final long diskMissCount;
+    private final long diskLoadTimeNanos;
+    private final long hashCount;
+    private final long hashTimeNanos;
+    private final long fingerprintHitCount;
+    private final long fingerprintEvictionCount;
+    private final long fingerprintIndexSize;
+    private final long remoteHitCount;
+    private final long remoteMissCount;
+    private final long estimatedSize;
+
+    public ReviewCacheStats(long hitCount, long missCount, long evictionCount,
+                            long diskHitCount, long diskMissCount, long diskLoadTimeNanos,
+                            long hashCount, long hashTimeNanos, long fingerprintHitCount,
+                            long fingerprintEvictionCount, long fingerprintIndexSize,
+                            long remoteHitCount, long remoteMissCount, long estimatedSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.diskHitCount = diskHitCount;
+        this.diskMissCount = diskMissCount;
+        this.diskLoadTimeNanos = diskLoadTimeNanos;
+        this.hashCount = hashCount;
+        this.hashTimeNanos = hashTimeNanos;
+        this.fingerprintHitCount = fingerprintHitCount;
+        this.fingerprintEvictionCount = fingerprintEvictionCount;
+        this.fingerprintIndexSize = fingerprintIndexSize;
+        this.remoteHitCount = remoteHitCount;
+        this.remoteMissCount = remoteMissCount;
+        this.estimatedSize = estimatedSize;
+    }
+
+    public long getHitCount() { return hitCount; }
+    public long getMissCount() { return missCount; }
+    public long getEvictionCount() { return evictionCount; }
+    public long getDiskHitCount() { return diskHitCount; }
+    public long getDiskMissCount() { return diskMissCount; }
+    public long getDiskLoadTimeNanos() { return diskLoadTimeNanos; }
+    public long getHashCount() { return hashCount; }
+    public long getHashTimeNanos() { return hashTimeNanos; }
+    public long getFingerprintHitCount() { return fingerprintHitCount; }
+    /** 指纹索引因容量不足淘汰的条目数，持续增长说明内存预算偏小 */
+    public long getFingerprintEvictionCount() { return fingerprintEvictionCount; }
+    public long getFingerprintIndexSize() { return fingerprintIndexSize; }
+    public long getRemoteHitCount() { return remoteHitCount; }
+    public long getRemoteMissCount() { return remoteMissCount; }
+    public long getEstimatedSize() { return estimatedSize; }
+
+    /**
+     * 总命中率：内存、磁盘或远程命中都算作命中
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0.0 : (double) (hitCount + diskHitCount + remoteHitCount) / requests;
+    }
+
+    public double getAverageHashTimeMillis() {
+        return hashCount == 0 ? 0.0 : hashTimeNanos / 1_000_000.0 / hashCount;
+    }
+
+    public double getAverageDiskLoadTimeMillis() {
+        long loads = diskHitCount + diskMissCount;
+        return loads == 0 ? 0.0 : diskLoadTimeNanos / 1_000_000.0 / loads;
+    }
+
+    /**
+     * 导出为 JSON，便于分析和调整缓存容量
+     */
+    public String toJson() {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "命中率: %.1f%%\n内存命中: %d\n未命中: %d\n磁盘命中: %d\n磁盘未命中: %d\n淘汰数: %d\n" +
+                "条目数: %d\n计算hash次数: %d (平均 %.2fms)\n修改戳命中: %d\n指纹索引条目数: %d (淘汰 %d)\n" +
+                "磁盘平均读取: %.2fms\n" +
+                "远程命中: %d\n远程未命中: %d",
+                getHitRate() * 100, hitCount, missCount, diskHitCount, diskMissCount, evictionCount,
+                estimatedSize, hashCount, getAverageHashTimeMillis(), fingerprintHitCount,
+                fingerprintIndexSize, fingerprintEvictionCount,
+                getAverageDiskLoadTimeMillis(), remoteHitCount, remoteMissCount);
+    }
+}
@@ -1,23 +1,31 @@
 package com.renrui.review.cache;
 
-import java.io.Serializable;
+import com.renrui.presubmit.codereview.model.Issue;
+
 import java.time.Instant;
 import java.util.List;
 
-public class ReviewResult implements Serializable {
-    private final List<String> issues;
+public class ReviewResult {
+    private final List<Issue> issues;
     private final Instant timestamp;
     private final String fileHash;
     private final boolean isTimeout;
 
-    public ReviewResult(List<String> issues, String fileHash, boolean isTimeout) {
+    public ReviewResult(List<Issue> issues, String fileHash, boolean isTimeout) {
+        this(issues, fileHash, isTimeout, Instant.now());
+    }
+
+    /**
+     * 用于反序列化，保留原始的审查时间
+     */
+    public ReviewResult(List<Issue> issues, String fileHash, boolean isTimeout, Instant timestamp) {
         this.issues = issues;
-        this.timestamp = Instant.now();
+        this.timestamp = timestamp;
         this.fileHash = fileHash;
         this.isTimeout = isTimeout;
     }
 
-    public List<String> getIssues() {
+    public List<Issue> getIssues() {
         return issues;
     }
 
@@ -32,4 +40,26 @@ public class ReviewResult implements Serializable {
     public boolean isTimeout() {
         return isTimeout;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 估算结果在堆中占用的字节数，用于按权重淘汰缓存
+     */
+    public int estimateRetainedSize() {
+        long size = 64 + estimateStringSize(fileHash);   // 对象头、字段、Instant
+        if (issues != null) {
+            size += 16 + 8L * issues.size();               // 列表及其引用数组
+            for (Issue issue : issues) {
+                size += 40                                  // Issue 对象头和字段
+                        + estimateStringSize(issue.getMessage())
+                        + estimateStringSize(issue.getSuggestion())
+                        + estimateStringSize(issue.getFile());
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private static long estimateStringSize(String value) {
+        // String 对象 + byte[]，按 UTF-16 保守估算
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+}
@@ -0,0 +1,220 @@
+package com.renrui.review.cache;
+
+import com.renrui.presubmit.codereview.model.Issue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 审查结果序列化工具，供磁盘缓存和远程缓存共用
+ *
+ * 紧凑的二进制格式（整数均为无符号 varint，行号为 zigzag varint）：
+ * <pre>
+ * magic(1) version(1) flags epochSecond nano fileHashRef
+ * stringCount { utf8Length utf8Bytes }
+ * issueCount { typeRef messageRef fileRef line suggestionRef }
+ * </pre>
+ * 字符串通过字符串表引用，0 表示 null，n 表示表中第 n-1 项，同一文件的多个问题只保存一次路径。
+ * 问题类型同样以 0 表示 null，n 表示序号为 n-1 的类型。
+ * 新增字段时递增版本号，无法识别的版本按缓存未命中处理。
+ */
+public final class ReviewResultSerializer {
+    private static final int MAGIC = 0x52;
+    private static final int VERSION = 2;
+    // 版本 1 直接写入类型序号，null 与序号 0 无法区分；仍可读取，null 按 BUG 处理
+    private static final int VERSION_ORDINAL_TYPES = 1;
+    private static final int FLAG_TIMEOUT = 1;
+    private static final Issue.IssueType[] ISSUE_TYPES = Issue.IssueType.values();
+
+    private ReviewResultSerializer() {
+    }
+
+    public static byte[] serialize(ReviewResult result) throws IOException {
+        StringTable strings = new StringTable();
+        int fileHashRef = strings.ref(result.getFileHash());
+        List<Issue> issues = result.getIssues() == null ? List.of() : result.getIssues();
+        int[] refs = new int[issues.size() * 3];
+        for (int i = 0; i < issues.size(); i++) {
+            Issue issue = issues.get(i);
+            refs[i * 3] = strings.ref(issue.getMessage());
+            refs[i * 3 + 1] = strings.ref(issue.getFile());
+            refs[i * 3 + 2] = strings.ref(issue.getSuggestion());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + issues.size() * 8);
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeVarLong(out, result.isTimeout() ? FLAG_TIMEOUT : 0);
+        writeVarLong(out, result.getTimestamp().getEpochSecond());
+        writeVarLong(out, result.getTimestamp().getNano());
+        writeVarLong(out, fileHashRef);
+
+        writeVarLong(out, strings.values.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeVarLong(out, issues.size());
+        for (int i = 0; i < issues.size(); i++) {
+            Issue issue = issues.get(i);
+            writeVarLong(out, issue.getType() == null ? 0 : issue.getType().ordinal() + 1);
+            writeVarLong(out, refs[i * 3]);
+            writeVarLong(out, refs[i * 3 + 1]);
+            writeVarLong(out, zigZag(issue.getLine()) & 0xFFFFFFFFL);
+            writeVarLong(out, refs[i * 3 + 2]);
+        }
+        return out.toByteArray();
+    }
+
+    public static ReviewResult deserialize(byte[] data) throws IOException {
+        Reader in = new Reader(data);
+        if (in.readByte() != MAGIC) {
+            throw new IOException("无法识别的审查结果格式");
+        }
+        int version = in.readByte();
+        if (version != VERSION && version != VERSION_ORDINAL_TYPES) {
+            throw new IOException("不支持的审查结果版本: " + version);
+        }
+        long flags = in.readVarLong();
+        Instant timestamp = Instant.ofEpochSecond(in.readVarLong(), in.readVarInt());
+        int fileHashRef = in.readVarInt();
+
+        int stringCount = in.readCount();
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            strings[i] = in.readString();
+        }
+
+        int issueCount = in.readCount();
+        List<Issue> issues = new ArrayList<>(issueCount);
+        for (int i = 0; i < issueCount; i++) {
+            int typeRef = in.readVarInt();
+            Issue.IssueType type = resolveType(version == VERSION_ORDINAL_TYPES ? typeRef + 1 : typeRef);
+            String message = resolve(strings, in.readVarInt());
+            String file = resolve(strings, in.readVarInt());
+            int line = unZigZag(in.readVarInt());
+            String suggestion = resolve(strings, in.readVarInt());
+            issues.add(new Issue(type, message, file, line, suggestion));
+        }
+        return new ReviewResult(issues, resolve(strings, fileHashRef), (flags & FLAG_TIMEOUT) != 0, timestamp);
+    }
+
+    /**
+     * 无法识别的类型（如新版本增加的类型）按 WARNING 处理
+     */
+    private static Issue.IssueType resolveType(int ref) {
+        if (ref == 0) {
+            return null;
+        }
+        return ref > 0 && ref <= ISSUE_TYPES.length ? ISSUE_TYPES[ref - 1] : Issue.IssueType.WARNING;
+    }
+
+    private static String resolve(String[] strings, int ref) throws IOException {
+        if (ref == 0) {
+            return null;
+        }
+        if (ref < 0 || ref > strings.length) {
+            throw new IOException("字符串引用越界: " + ref);
+        }
+        return strings[ref - 1];
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 字符串表，相同字符串只写入一次
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private int ref(String value) {
+            if (value == null) {
+                return 0;
+            }
+            return refs.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size();
+            });
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        private Reader(byte[] data) {
+            this.data = data;
+        }
+
+        private int readByte() throws IOException {
+            if (position >= data.length) {
+                throw new IOException("审查结果数据不完整");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        private long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("varint 格式错误");
+        }
+
+        private int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value > 0xFFFFFFFFL) {
+                throw new IOException("varint 超出范围: " + value);
+            }
+            return (int) value;
+        }
+
+        /**
+         * 读取元素个数，每个元素至少占一个字节，超过剩余数据长度说明数据已损坏
+         */
+        private int readCount() throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > data.length - position) {
+                throw new IOException("元素个数越界: " + count);
+            }
+            return count;
+        }
+
+        private String readString() throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > data.length - position) {
+                throw new IOException("字符串长度越界: " + length);
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.renrui.review.chunk;
+
+/**
+ * 代码块
+ * 文件中一段连续的行，作为独立的审查和缓存单位
+ */
+public class CodeChunk {
+    // 起始行号，从 1 开始
+    private final int startLine;
+    private final String content;
+
+    public CodeChunk(int startLine, String content) {
+        this.startLine = startLine;
+        this.content = content;
+    }
+
+    public int getStartLine() {
+        return startLine;
+    }
+
+    public String getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,74 @@
+package com.renrui.review.chunk;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Java 文件分块器
+ * 按顶层类型的成员把文件切分为连续的代码块：
+ * 第一个成员之前的部分（package、import、类声明）为一块，之后每个成员（含注释）各为一块。
+ */
+public class JavaChunkSplitter {
+    private static final Logger LOG = Logger.getInstance(JavaChunkSplitter.class);
+    private static final Pattern LINE_SEPARATOR = Pattern.compile("\r\n|\r|\n");
+
+    /**
+     * 切分文件内容
+     * @param content 文件内容
+     * @return 覆盖全部行的代码块列表，解析失败时返回只包含整个文件的一块
+     */
+    public List<CodeChunk> split(String content) {
+        List<String> lines = Arrays.asList(LINE_SEPARATOR.split(content, -1));
+        TreeSet<Integer> boundaries = new TreeSet<>();
+        boundaries.add(1);
+
+        ParseResult<CompilationUnit> result = new JavaParser(new ParserConfiguration()
+                .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17))
+                .parse(content);
+        if (!result.isSuccessful() || result.getResult().isEmpty()) {
+            LOG.debug("Java 解析失败，按整个文件处理");
+            return List.of(new CodeChunk(1, content));
+        }
+
+        for (TypeDeclaration<?> type : result.getResult().get().getTypes()) {
+            for (BodyDeclaration<?> member : type.getMembers()) {
+                beginLine(member).ifPresent(boundaries::add);
+            }
+        }
+
+        List<CodeChunk> chunks = new ArrayList<>(boundaries.size());
+        Integer start = boundaries.first();
+        while (start != null && start <= lines.size()) {
+            Integer next = boundaries.higher(start);
+            int end = next == null ? lines.size() : Math.min(next - 1, lines.size());
+            chunks.add(new CodeChunk(start, String.join("\n", lines.subList(start - 1, end))));
+            start = next;
+        }
+        return chunks;
+    }
+
+    /**
+     * 成员的起始行，包含其前面的注释
+     */
+    private Optional<Integer> beginLine(BodyDeclaration<?> member) {
+        Optional<Integer> memberLine = member.getRange().map(range -> range.begin.line);
+        Optional<Integer> commentLine = member.getComment().flatMap(Node::getRange).map(range -> range.begin.line);
+        if (commentLine.isPresent() && memberLine.isPresent()) {
+            return Optional.of(Math.min(commentLine.get(), memberLine.get()));
+        }
+        return memberLine;
+    }
+}
@@ -0,0 +1,105 @@
+package com.renrui.review.content;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * 读取待审查文件的文本内容
+ * 文件已在编辑器中打开时直接使用 {@link Document} 的内容，包含未保存的修改且不复制；
+ * 否则按文件检测到的编码（BOM、编码设置、XML/HTML 声明等）解码，而不是使用平台默认编码。
+ */
+public final class ReviewContentProvider {
+    private static final Logger LOG = Logger.getInstance(ReviewContentProvider.class);
+
+    private ReviewContentProvider() {
+    }
+
+    /**
+     * 读取文件内容，可在任意线程调用
+     * @return 文件内容的只读视图，目录、不存在的文件和二进制文件返回 null
+     */
+    public static @Nullable CharSequence load(VirtualFile file) {
+        return ReadAction.compute(() -> {
+            if (!file.isValid() || file.isDirectory() || file.getFileType().isBinary()) {
+                return null;
+            }
+            Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+            if (document != null) {
+                return document.getImmutableCharSequence();
+            }
+            return LoadTextUtil.loadText(file);
+        });
+    }
+
+    /**
+     * 按过滤结果读取文件，超过大小上限的文件只读取开头部分
+     * @return 不需要审查的文件返回 null
+     */
+    public static @Nullable CharSequence load(VirtualFile file, ReviewFileFilter filter) {
+        if (!file.isValid() || file.isDirectory()) {
+            return null;
+        }
+        ReviewFileFilter.Decision decision = filter.check(file);
+        switch (decision) {
+            case REVIEW:
+                return load(file);
+            case HEAD_ONLY:
+                LOG.info("文件超过大小上限，只审查开头部分: " + file.getPath());
+                return loadHead(file, filter.getMaxHeadChars());
+            default:
+                LOG.info("跳过文件: " + file.getPath() + " (" + decision + ")");
+                return null;
+        }
+    }
+
+    /**
+     * 流式读取文件开头的一段，用于超过大小上限的文件，不会把整个文件读入内存
+     * @param maxChars 最多读取的字符数，截断在最后一个完整行
+     * @return 文件开头的内容，读取失败时返回 null
+     */
+    public static @Nullable CharSequence loadHead(VirtualFile file, int maxChars) {
+        Document document = ReadAction.compute(() -> FileDocumentManager.getInstance().getCachedDocument(file));
+        if (document != null) {
+            CharSequence text = document.getImmutableCharSequence();
+            return text.length() <= maxChars ? text : text.subSequence(0, lineBoundary(text, maxChars));
+        }
+
+        char[] buffer = new char[maxChars];
+        int length = 0;
+        try (Reader reader = new InputStreamReader(file.getInputStream(), file.getCharset())) {
+            int read;
+            while (length < maxChars && (read = reader.read(buffer, length, maxChars - length)) >= 0) {
+                length += read;
+            }
+            if (length == maxChars && reader.read() >= 0) {
+                length = lineBoundary(CharBuffer.wrap(buffer, 0, length), length);
+            }
+        } catch (IOException e) {
+            LOG.warn("读取文件失败: " + file.getPath(), e);
+            return null;
+        }
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * 不超过 limit 的最后一个换行之后的位置，没有换行时返回 limit
+     */
+    private static int lineBoundary(CharSequence text, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (text.charAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,194 @@
+package com.renrui.review.content;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.renrui.presubmit.codereview.settings.AiReviewSettings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 审查前的文件过滤
+ * 在读取文件内容之前排除不值得审查的文件：
+ * <ul>
+ *     <li>匹配排除规则的文件，如锁文件、压缩后的 js/css</li>
+ *     <li>二进制文件，按文件类型或开头是否包含 NUL 字节判断</li>
+ *     <li>生成的文件，按开头的 "@generated"、"DO NOT EDIT" 等标记或超长的首行判断</li>
+ * </ul>
+ * 超过大小上限的文件不整体读入，只审查开头的一段，见 {@link ReviewContentProvider#loadHead}。
+ */
+public class ReviewFileFilter {
+    private static final Logger LOG = Logger.getInstance(ReviewFileFilter.class);
+    // 用于判断二进制和生成文件的开头字节数
+    private static final int SNIFF_BYTES = 8 * 1024;
+    // 首行超过该长度视为压缩或生成的文件
+    private static final int MAX_FIRST_LINE_LENGTH = 4 * 1024;
+    // 生成标记只在文件头部查找，避免普通注释误判
+    private static final int MARKER_SEARCH_CHARS = 1024;
+    private static final String[] GENERATED_MARKERS = {
+            "@generated",
+            "do not edit",
+            "<auto-generated",
+            "code generated by",
+            "this file was automatically generated",
+            "autogenerated file",
+    };
+
+    /**
+     * 过滤结果
+     */
+    public enum Decision {
+        REVIEW,
+        // 超过大小上限，只审查开头部分
+        HEAD_ONLY,
+        EXCLUDED,
+        BINARY,
+        GENERATED
+    }
+
+    private final long maxFileBytes;
+    private final List<Pattern> excludes;
+    private final boolean skipGenerated;
+
+    /**
+     * @param maxFileBytes 整体审查的文件大小上限
+     * @param excludePatterns 逗号分隔的 glob 排除规则
+     * @param skipGenerated 是否跳过生成的文件
+     */
+    public ReviewFileFilter(long maxFileBytes, String excludePatterns, boolean skipGenerated) {
+        this.maxFileBytes = maxFileBytes;
+        this.excludes = new ArrayList<>();
+        for (String pattern : excludePatterns.split(",")) {
+            if (!pattern.isBlank()) {
+                excludes.add(toRegex(pattern.trim()));
+            }
+        }
+        this.skipGenerated = skipGenerated;
+    }
+
+    public static ReviewFileFilter fromSettings() {
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        return new ReviewFileFilter(settings.getMaxReviewFileSizeKb() * 1024L,
+                settings.getReviewExcludePatterns(), settings.isSkipGeneratedFiles());
+    }
+
+    /**
+     * 判断文件是否需要审查，只读取文件开头的少量字节
+     */
+    public Decision check(VirtualFile file) {
+        if (isExcluded(file.getPath())) {
+            return Decision.EXCLUDED;
+        }
+        if (file.getFileType().isBinary()) {
+            return Decision.BINARY;
+        }
+
+        byte[] head = new byte[SNIFF_BYTES];
+        int length;
+        try (InputStream input = file.getInputStream()) {
+            length = input.readNBytes(head, 0, head.length);
+        } catch (IOException e) {
+            LOG.warn("读取文件开头失败: " + file.getPath(), e);
+            return Decision.REVIEW;
+        }
+        // UTF-16/32 编码的文本本身包含 NUL 字节
+        Charset charset = file.getCharset();
+        if (!charset.name().startsWith("UTF-16") && !charset.name().startsWith("UTF-32")
+                && containsNul(head, length)) {
+            return Decision.BINARY;
+        }
+        if (skipGenerated && isGenerated(new String(head, 0, length, charset))) {
+            return Decision.GENERATED;
+        }
+        return file.getLength() > maxFileBytes ? Decision.HEAD_ONLY : Decision.REVIEW;
+    }
+
+    /**
+     * 完整审查的文件大小上限，超过时只审查开头部分
+     */
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    /**
+     * 只审查开头部分时读取的最大字符数
+     */
+    public int getMaxHeadChars() {
+        return (int) Math.min(Integer.MAX_VALUE, maxFileBytes);
+    }
+
+    public boolean isExcluded(String path) {
+        String normalized = path.replace('\\', '/');
+        for (Pattern exclude : excludes) {
+            if (exclude.matcher(normalized).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean containsNul(byte[] head, int length) {
+        for (int i = 0; i < length; i++) {
+            if (head[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isGenerated(CharSequence head) {
+        int firstLineEnd = indexOf(head, '\n');
+        if ((firstLineEnd < 0 ? head.length() : firstLineEnd) > MAX_FIRST_LINE_LENGTH) {
+            return true;
+        }
+        String text = head.subSequence(0, Math.min(head.length(), MARKER_SEARCH_CHARS)).toString()
+                .toLowerCase(Locale.ROOT);
+        for (String marker : GENERATED_MARKERS) {
+            if (text.contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * glob 转换为正则：** 匹配任意层目录，* 和 ? 不跨越目录，不以 / 开头的模式匹配任意目录下的文件
+     */
+    static Pattern toRegex(String glob) {
+        String pattern = glob.startsWith("/") || glob.startsWith("**") ? glob : "**/" + glob;
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                if (i + 2 < pattern.length() && pattern.charAt(i + 2) == '/') {
+                    regex.append("(?:.*/)?");
+                    i += 2;
+                } else {
+                    regex.append(".*");
+                    i++;
+                }
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static int indexOf(CharSequence text, char c) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
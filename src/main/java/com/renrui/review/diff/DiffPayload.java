@@ -0,0 +1,92 @@
+package com.renrui.review.diff;
+
+import com.renrui.presubmit.codereview.model.Issue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个文件的 diff 审查内容
+ * 内容为统一 diff 格式的变更片段，同时记录片段中每一行对应的当前文件行号。
+ * 请求中约定审查服务按 hunk 头中 "+" 之后的新文件行号报告问题，
+ * 返回的行号只需校正到审查内容覆盖的行上，不再按片段中的位置换算。
+ */
+public class DiffPayload {
+    private final String path;
+    private final String text;
+    // 片段第 i 行（从 0 开始）对应的当前文件行号（从 1 开始）
+    private final int[] fileLines;
+
+    public DiffPayload(String path, String text, int[] fileLines) {
+        this.path = path;
+        this.text = text;
+        this.fileLines = fileLines;
+    }
+
+    /**
+     * 按整个文件审查的内容，行号不需要换算
+     */
+    public static DiffPayload wholeFile(String path, CharSequence content) {
+        int lineCount = DiffPayloadBuilder.splitLines(content).length;
+        int[] fileLines = new int[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            fileLines[i] = i + 1;
+        }
+        return new DiffPayload(path, content.toString(), fileLines);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * 没有任何变更行，不需要审查
+     */
+    public boolean isEmpty() {
+        return fileLines.length == 0;
+    }
+
+    /**
+     * 校正审查服务返回的行号：审查内容覆盖的行原样保留，超出范围的行号定位到最近的一行审查内容
+     * 删除的行对应其后的第一行
+     * @param reportedLine 当前文件中的行号，从 1 开始，小于 1 表示没有行号
+     */
+    public int mapLine(int reportedLine) {
+        if (reportedLine < 1 || fileLines.length == 0) {
+            return reportedLine;
+        }
+        int nearest = fileLines[0];
+        for (int line : fileLines) {
+            if (line == reportedLine) {
+                return line;
+            }
+            if (Math.abs(line - reportedLine) < Math.abs(nearest - reportedLine)) {
+                nearest = line;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * 把审查结果中的行号校正到审查内容覆盖的行上，不属于任何片段的问题保持不变
+     * @param payloads 文件路径 -> 审查内容
+     */
+    public static List<Issue> mapIssues(List<Issue> issues, Map<String, DiffPayload> payloads) {
+        List<Issue> mapped = new ArrayList<>(issues.size());
+        for (Issue issue : issues) {
+            DiffPayload payload = issue.getFile() == null ? null : payloads.get(issue.getFile());
+            if (payload == null) {
+                mapped.add(issue);
+            } else {
+                mapped.add(new Issue(issue.getType(), issue.getMessage(), issue.getFile(),
+                        payload.mapLine(issue.getLine()), issue.getSuggestion()));
+            }
+        }
+        return mapped;
+    }
+}
@@ -0,0 +1,196 @@
+package com.renrui.review.diff;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.diff.Diff;
+import com.intellij.util.diff.FilesTooBigForDiffException;
+import com.renrui.review.content.ReviewContentProvider;
+import com.renrui.review.content.ReviewFileFilter;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 根据提交中的变更生成 diff 审查内容
+ * 每个文件只发送变更行及其前后若干行上下文，格式为统一 diff 的片段：
+ * <pre>
+ * &#64;&#64; -12,4 +12,5 &#64;&#64;
+ *  上下文
+ * -删除的行
+ * +新增的行
+ * </pre>
+ * 审查服务按 hunk 头中的新文件行号报告问题，由 {@link DiffPayload#mapLine} 校正到片段覆盖的行上。
+ */
+public class DiffPayloadBuilder {
+    private static final Logger LOG = Logger.getInstance(DiffPayloadBuilder.class);
+
+    private final int contextLines;
+
+    /**
+     * @param contextLines 每处变更前后保留的上下文行数
+     */
+    public DiffPayloadBuilder(int contextLines) {
+        this.contextLines = Math.max(0, contextLines);
+    }
+
+    /**
+     * 为提交中的变更生成审查内容，跳过删除的文件、没有实际变更的文件和被过滤的文件
+     * 超过大小上限的文件不计算 diff，只审查开头部分
+     * @return 文件路径 -> 审查内容
+     */
+    public Map<String, DiffPayload> build(Collection<Change> changes, ReviewFileFilter filter) {
+        Map<String, DiffPayload> payloads = new LinkedHashMap<>();
+        for (Change change : changes) {
+            ContentRevision after = change.getAfterRevision();
+            if (after == null) {
+                continue;
+            }
+            String path = after.getFile().getPath();
+            VirtualFile file = change.getVirtualFile();
+            ReviewFileFilter.Decision decision = file != null ? filter.check(file)
+                    : filter.isExcluded(path) ? ReviewFileFilter.Decision.EXCLUDED : ReviewFileFilter.Decision.REVIEW;
+            if (decision == ReviewFileFilter.Decision.HEAD_ONLY) {
+                CharSequence head = ReviewContentProvider.loadHead(file, filter.getMaxHeadChars());
+                if (head != null) {
+                    LOG.info("文件超过大小上限，只审查开头部分: " + path);
+                    payloads.put(path, DiffPayload.wholeFile(path, head));
+                }
+                continue;
+            }
+            if (decision != ReviewFileFilter.Decision.REVIEW) {
+                LOG.info("跳过文件: " + path + " (" + decision + ")");
+                continue;
+            }
+            try {
+                String afterContent = after.getContent();
+                if (afterContent == null) {
+                    continue;
+                }
+                ContentRevision before = change.getBeforeRevision();
+                DiffPayload payload = build(path, before == null ? null : before.getContent(), afterContent);
+                if (!payload.isEmpty()) {
+                    payloads.put(path, payload);
+                }
+            } catch (VcsException e) {
+                LOG.warn("读取变更内容失败: " + path, e);
+            }
+        }
+        return payloads;
+    }
+
+    /**
+     * 生成单个文件的审查内容
+     * @param before 修改前的内容，新文件为 null
+     * @param after 修改后的内容
+     */
+    public DiffPayload build(String path, @Nullable CharSequence before, CharSequence after) {
+        String[] beforeLines = before == null ? new String[0] : splitLines(before);
+        String[] afterLines = splitLines(after);
+
+        Diff.Change change;
+        try {
+            change = Diff.buildChanges(beforeLines, afterLines);
+        } catch (FilesTooBigForDiffException e) {
+            // 差异过大时按整个文件审查
+            LOG.info("文件变更过多，按整个文件审查: " + path);
+            return DiffPayload.wholeFile(path, after);
+        }
+
+        StringBuilder text = new StringBuilder();
+        List<Integer> fileLines = new ArrayList<>();
+        while (change != null) {
+            // 上下文重叠的相邻变更合并为一个片段
+            Diff.Change last = change;
+            while (last.link != null
+                    && last.link.line1 - (last.line1 + last.inserted) <= 2 * contextLines) {
+                last = last.link;
+            }
+            appendHunk(text, fileLines, beforeLines, afterLines, change, last);
+            change = last.link;
+        }
+        return new DiffPayload(path, text.toString(), toArray(fileLines));
+    }
+
+    private void appendHunk(StringBuilder text, List<Integer> fileLines, String[] beforeLines, String[] afterLines,
+                            Diff.Change first, Diff.Change last) {
+        int lead = Math.min(contextLines, first.line1);
+        int trail = Math.min(contextLines, afterLines.length - (last.line1 + last.inserted));
+        int beforeStart = first.line0 - lead;
+        int afterStart = first.line1 - lead;
+        int beforeCount = last.line0 + last.deleted + trail - beforeStart;
+        int afterCount = last.line1 + last.inserted + trail - afterStart;
+
+        text.append("@@ -").append(beforeStart + 1).append(',').append(beforeCount)
+                .append(" +").append(afterStart + 1).append(',').append(afterCount).append(" @@\n");
+        fileLines.add(fileLine(afterStart, afterLines.length));
+
+        int afterPos = afterStart;
+        for (Diff.Change change = first; ; change = change.link) {
+            for (; afterPos < change.line1; afterPos++) {
+                appendLine(text, fileLines, ' ', afterLines[afterPos], afterPos + 1);
+            }
+            // 删除的行定位到其后的第一行
+            for (int i = 0; i < change.deleted; i++) {
+                appendLine(text, fileLines, '-', beforeLines[change.line0 + i],
+                        fileLine(change.line1, afterLines.length));
+            }
+            for (int i = 0; i < change.inserted; i++, afterPos++) {
+                appendLine(text, fileLines, '+', afterLines[afterPos], afterPos + 1);
+            }
+            if (change == last) {
+                break;
+            }
+        }
+        for (int end = afterPos + trail; afterPos < end; afterPos++) {
+            appendLine(text, fileLines, ' ', afterLines[afterPos], afterPos + 1);
+        }
+    }
+
+    private static void appendLine(StringBuilder text, List<Integer> fileLines, char prefix, String line,
+                                   int fileLine) {
+        text.append(prefix).append(line).append('\n');
+        fileLines.add(fileLine);
+    }
+
+    /**
+     * 0 开始的行位置换算为 1 开始的行号，文件末尾之后的位置定位到最后一行
+     */
+    private static int fileLine(int index, int lineCount) {
+        return Math.max(1, Math.min(index + 1, lineCount));
+    }
+
+    /**
+     * 按行切分，直接扫描字符序列，不先复制整个文件内容
+     */
+    static String[] splitLines(CharSequence content) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int length = content.length();
+        for (int i = 0; i < length; i++) {
+            if (content.charAt(i) == '\n') {
+                int end = i > start && content.charAt(i - 1) == '\r' ? i - 1 : i;
+                lines.add(content.subSequence(start, end).toString());
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            lines.add(content.subSequence(start, length).toString());
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+}
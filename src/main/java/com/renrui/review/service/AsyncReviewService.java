@@ -1,28 +1,72 @@
 package com.renrui.review.service;
 
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.renrui.presubmit.codereview.model.Issue;
+import com.renrui.presubmit.codereview.service.AiCodeReviewService;
+import com.renrui.presubmit.codereview.service.AiReviewServiceFactory;
+import com.renrui.presubmit.codereview.settings.AiReviewSettings;
 import com.renrui.review.cache.ReviewCache;
 import com.renrui.review.cache.ReviewResult;
+import com.renrui.review.content.ReviewContentProvider;
+import com.renrui.review.content.ReviewFileFilter;
+import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AsyncReviewService {
     private static final Logger LOG = Logger.getInstance(AsyncReviewService.class);
-    private static final int TIMEOUT_SECONDS = 30;
+    // 超时结果缓存超过该时间后，再次命中时在后台重新审查
+    private static final Duration TIMEOUT_REFRESH_AFTER = Duration.ofSeconds(30);
     
-    private final ExecutorService executorService;
+    private final ReviewScheduler scheduler;
+    private final ReviewBatcher batcher;
+    private final LatencyTracker latencyTracker;
     private final ReviewCache reviewCache;
     private final Project project;
+    // 正在审查的内容hash，相同内容的并发请求共用一次审查
+    private final ConcurrentMap<String, InFlightReview> inFlight = new ConcurrentHashMap<>();
 
     public AsyncReviewService(Project project, ReviewCache reviewCache) {
+        this(project, reviewCache, ReviewScheduler.createDefault());
+    }
+
+    public AsyncReviewService(Project project, ReviewCache reviewCache, ReviewScheduler scheduler) {
+        this(project, reviewCache, scheduler, AiReviewServiceFactory.getInstance());
+    }
+
+    private AsyncReviewService(Project project, ReviewCache reviewCache, ReviewScheduler scheduler,
+                               AiCodeReviewService backend) {
+        this(project, reviewCache, scheduler, createBatcher(backend, scheduler),
+                LatencyTracker.forBackend(backend.getServiceType().name()));
+    }
+
+    /**
+     * @param latencyTracker 后端的延迟统计，用于推算调用方的等待超时
+     */
+    public AsyncReviewService(Project project, ReviewCache reviewCache, ReviewScheduler scheduler,
+                              ReviewBatcher batcher, LatencyTracker latencyTracker) {
         this.project = project;
         this.reviewCache = reviewCache;
-        this.executorService = Executors.newCachedThreadPool();
+        this.scheduler = scheduler;
+        this.batcher = batcher;
+        this.latencyTracker = latencyTracker;
+    }
+
+    private static ReviewBatcher createBatcher(AiCodeReviewService backend, ReviewScheduler scheduler) {
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        return new ReviewBatcher(backend, scheduler,
+                Duration.ofMillis(settings.getBatchWindowMillis()),
+                settings.getBatchMaxSizeKb() * 1024L,
+                settings.getBatchMaxFiles());
     }
 
     /**
@@ -31,40 +75,183 @@ public class AsyncReviewService {
      * @param callback 回调函数，处理审查结果
      */
     public void reviewAsync(VirtualFile file, ReviewCallback callback) {
-        if (!reviewCache.needsReview(file)) {
-            ReviewResult cachedResult = reviewCache.getCachedResult(file);
-            if (cachedResult != null) {
-                callback.onComplete(cachedResult);
-                return;
+        reviewAsync(file, ReviewScheduler.Priority.INTERACTIVE, callback);
+    }
+
+    /**
+     * 按指定优先级异步执行代码审查
+     * @param file 待审查文件
+     * @param priority 调度优先级，提交和交互请求先于后台预审查执行
+     * @param callback 回调函数，在工作线程中调用
+     */
+    public void reviewAsync(VirtualFile file, ReviewScheduler.Priority priority, ReviewCallback callback) {
+        reviewAsync(file, priority, ReviewCancellation.NONE, callback);
+    }
+
+    /**
+     * 可取消的异步代码审查
+     * 取消后回调以 {@link CancellationException} 调用 onError；共用同一次审查的调用方全部取消后，后端调用也会被取消
+     * @param cancellation 取消令牌
+     */
+    public void reviewAsync(VirtualFile file, ReviewScheduler.Priority priority, ReviewCancellation cancellation,
+                            ReviewCallback callback) {
+        // 记录审查开始时的内容hash，审查期间文件被修改也不会缓存到错误的内容上
+        String contentHash = contentHash(file);
+        ReviewResult cachedResult = contentHash == null ? null
+                : reviewCache.getCachedResults(List.of(contentHash)).get(contentHash);
+        if (cachedResult != null) {
+            if (cachedResult.isTimeout()) {
+                refreshInBackground(file, cachedResult);
             }
+            callback.onComplete(cachedResult);
+            return;
+        }
+        if (cancellation.isCancelled()) {
+            callback.onError(new CancellationException("审查已取消"));
+            return;
         }
 
-        new Task.Backgroundable(project, "代码审查中...") {
-            @Override
-            public void run(ProgressIndicator indicator) {
-                try {
-                    Future<List<String>> future = executorService.submit(() -> performReview(file));
-                    List<String> issues = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                    
-                    ReviewResult result = new ReviewResult(issues, file.getPath(), false);
-                    reviewCache.cacheResult(file, result);
-                    callback.onComplete(result);
-                } catch (TimeoutException e) {
-                    LOG.warn("代码审查超时: " + file.getPath());
-                    ReviewResult timeoutResult = new ReviewResult(List.of("审查超时，自动放行"), file.getPath(), true);
-                    reviewCache.cacheResult(file, timeoutResult);
-                    callback.onComplete(timeoutResult);
-                } catch (Exception e) {
-                    LOG.error("代码审查失败", e);
-                    callback.onError(e);
+        InFlightReview review = review(file, contentHash, priority);
+        // 超时和取消只影响调用方自己的副本，审查本身继续执行，结果返回后替换掉缓存中的超时结果
+        CompletableFuture<ReviewResult> waiting = review.result.copy();
+        Runnable unregister = cancellation.onCancel(() -> {
+            if (waiting.cancel(false)) {
+                review.release();
+            }
+        });
+        // 文件与其他文件合并发送，按整个批次的大小和后端近期的延迟推算等待时间（样本不足时为 30 秒），
+        // 从批次发送时开始计时
+        review.batchPayload.thenAccept(payloadChars -> {
+            Duration timeout = latencyTracker.timeoutFor(payloadChars);
+            waiting.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        });
+        waiting.whenComplete((result, error) -> {
+            unregister.run();
+            if (error == null) {
+                callback.onComplete(result);
+            } else if (isTimeout(error)) {
+                LOG.warn("代码审查超时: " + file.getPath());
+                Issue timeoutIssue = new Issue(Issue.IssueType.WARNING, "审查超时，自动放行", file.getPath(), 0, "");
+                ReviewResult timeoutResult = new ReviewResult(List.of(timeoutIssue), contentHash, true);
+                // 真实结果已写入缓存时不再覆盖
+                if (contentHash != null
+                        && (!review.result.isDone() || review.result.isCompletedExceptionally())) {
+                    reviewCache.cacheResult(contentHash, timeoutResult);
+                }
+                callback.onComplete(timeoutResult);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                if (cause instanceof CancellationException) {
+                    LOG.debug("代码审查已取消: " + file.getPath());
+                } else {
+                    LOG.error("代码审查失败", cause);
                 }
+                callback.onError(cause instanceof Exception ? (Exception) cause : new ExecutionException(cause));
             }
-        }.queue();
+        });
+    }
+
+    /**
+     * 审查内容的hash：文件在编辑器中有未保存的修改时按文档内容计算，与实际审查的内容一致；
+     * 否则使用缓存对文件的hash（指纹、git blob ID 或文件内容）
+     */
+    private @Nullable String contentHash(VirtualFile file) {
+        Document document = ReadAction.compute(() -> {
+            FileDocumentManager manager = FileDocumentManager.getInstance();
+            return manager.isFileModified(file) ? manager.getCachedDocument(file) : null;
+        });
+        return document != null
+                ? reviewCache.getContentHash(document.getImmutableCharSequence())
+                : reviewCache.getContentHash(file);
+    }
+
+    /**
+     * 调用方等待超时，或后端按自适应超时放弃了请求
+     */
+    private static boolean isTimeout(Throwable error) {
+        return error instanceof TimeoutException
+                || error instanceof CompletionException && error.getCause() instanceof TimeoutException;
+    }
+
+    /**
+     * 发起审查，相同内容已有审查在进行时直接复用，所有调用方在同一次审查完成时收到结果
+     * 返回的审查由多个调用方共享，调用方只能对 result 的副本设置超时或取消，不再等待时调用 release
+     */
+    private InFlightReview review(VirtualFile file, String contentHash, ReviewScheduler.Priority priority) {
+        InFlightReview created = new InFlightReview();
+        created.acquire();
+        if (contentHash == null) {
+            performReview(file, priority, created)
+                    .whenComplete((batched, error) -> created.complete(
+                            error == null ? cacheResult(file, null, batched) : null, error));
+            return created;
+        }
+        // 已取消的审查不再复用，由新的调用方重新发起
+        InFlightReview current = inFlight.compute(contentHash, (key, existing) ->
+                existing == null || existing.cancellation.isCancelled() ? created : existing);
+        if (current != created) {
+            LOG.debug("复用进行中的审查: " + file.getPath());
+            current.acquire();
+            return current;
+        }
+        performReview(file, priority, created)
+                .whenComplete((batched, error) -> {
+                    // 先写缓存再移除，之后的调用方可以直接命中缓存
+                    ReviewResult result = error == null ? cacheResult(file, contentHash, batched) : null;
+                    inFlight.remove(contentHash, created);
+                    created.complete(result, error);
+                });
+        return created;
+    }
+
+    /**
+     * 超时结果已缓存一段时间后，在后台重新审查并替换缓存，不阻塞调用方
+     */
+    private void refreshInBackground(VirtualFile file, ReviewResult timeoutResult) {
+        String contentHash = timeoutResult.getFileHash();
+        if (contentHash == null
+                || Duration.between(timeoutResult.getTimestamp(), Instant.now()).compareTo(TIMEOUT_REFRESH_AFTER) < 0
+                || inFlight.containsKey(contentHash)) {
+            return;
+        }
+        LOG.debug("后台重新审查超时文件: " + file.getPath());
+        review(file, contentHash, ReviewScheduler.Priority.BACKGROUND).result
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        LOG.debug("后台重新审查失败: " + file.getPath(), error);
+                    }
+                });
     }
 
-    private List<String> performReview(VirtualFile file) {
-        // TODO: 实现具体的代码审查逻辑
-        return List.of();
+    /**
+     * 批次中有无法对应到文件的问题时不缓存，只返回给调用方
+     */
+    private ReviewResult cacheResult(VirtualFile file, String contentHash, ReviewBatcher.FileResult batched) {
+        ReviewResult result = new ReviewResult(batched.getIssues(), contentHash, false);
+        if (!batched.isCacheable()) {
+            LOG.debug("审查结果包含无法对应到文件的问题，不缓存: " + file.getPath());
+        } else if (contentHash != null) {
+            reviewCache.cacheResult(contentHash, result);
+        } else {
+            reviewCache.cacheResult(file, result);
+        }
+        return result;
+    }
+
+    /**
+     * 把文件交给批处理，与同一时间窗口内的其他文件合并成一次后端调用
+     * 内容与提交时一致：优先使用编辑器中的文档，按过滤设置跳过二进制、生成的文件，超大文件只审查开头部分
+     */
+    private CompletableFuture<ReviewBatcher.FileResult> performReview(VirtualFile file,
+                                                                      ReviewScheduler.Priority priority,
+                                                                      InFlightReview review) {
+        CharSequence content = ReviewContentProvider.load(file, ReviewFileFilter.fromSettings());
+        if (content == null) {
+            return CompletableFuture.completedFuture(new ReviewBatcher.FileResult(List.of(), true));
+        }
+        return batcher.submit(file.getPath(), content.toString(), priority, review.cancellation,
+                review.batchPayload::complete);
     }
 
     public interface ReviewCallback {
@@ -72,14 +259,43 @@ public class AsyncReviewService {
         void onError(Exception e);
     }
 
+    /**
+     * 取消所有进行中的审查并关闭调度器
+     */
     public void dispose() {
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(800, TimeUnit.MILLISECONDS)) {
-                executorService.shutdownNow();
+        for (InFlightReview review : inFlight.values()) {
+            review.cancellation.cancel();
+        }
+        batcher.shutdown();
+        scheduler.shutdown();
+    }
+
+    /**
+     * 一次进行中的审查，记录等待它的调用方数量，全部取消后取消后端调用
+     */
+    private static final class InFlightReview {
+        private final CompletableFuture<ReviewResult> result = new CompletableFuture<>();
+        private final ReviewCancellation cancellation = new ReviewCancellation();
+        // 所在批次发送时完成，值为整个批次的字符数
+        private final CompletableFuture<Long> batchPayload = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        private void acquire() {
+            waiters.incrementAndGet();
+        }
+
+        private void release() {
+            if (waiters.decrementAndGet() == 0) {
+                cancellation.cancel();
+            }
+        }
+
+        private void complete(ReviewResult value, Throwable error) {
+            if (error == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(error);
             }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,315 @@
+package com.renrui.review.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 审查后端的客户端限流
+ * 每个接口地址一个实例，同时限制请求速率（令牌桶）和并发数（AIMD）：
+ * <ul>
+ *     <li>请求成功且延迟没有明显上升时，并发上限每轮加一</li>
+ *     <li>收到 429/503 或延迟超过基线两倍时，并发上限减半，收到 Retry-After 时暂停发放令牌</li>
+ * </ul>
+ * 延迟从获得名额时开始计算，并按请求内容大小归一化（与 {@link LatencyTracker} 相同），大批次不会被当作后端过载。
+ * 超过限制的请求在 {@link #acquire} 中排队等待，不会直接失败。
+ */
+public class BackendRateLimiter {
+    private static final Logger LOG = Logger.getInstance(BackendRateLimiter.class);
+    private static final Map<String, BackendRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+    private static final double DEFAULT_PERMITS_PER_SECOND = 5;
+    private static final int DEFAULT_BURST = 10;
+    private static final int DEFAULT_INITIAL_CONCURRENCY = 4;
+    private static final int DEFAULT_MAX_CONCURRENCY = 32;
+    // 延迟超过基线的该倍数视为后端过载
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // 忽略网络抖动造成的小幅波动
+    private static final double LATENCY_SLACK_MILLIS = 100;
+    // 基线延迟的平滑系数
+    private static final double BASELINE_ALPHA = 0.05;
+    private static final Duration DEFAULT_BACKOFF = Duration.ofSeconds(1);
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    private final String endpoint;
+    private final double permitsPerSecond;
+    private final int burst;
+    private final int maxConcurrency;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // 以下字段由 lock 保护
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double baselineLatencyMillis;
+    private long throttledCount;
+
+    /**
+     * 获取指定接口的限流器，首次获取时使用默认参数创建
+     */
+    public static BackendRateLimiter forEndpoint(String endpoint) {
+        return LIMITERS.computeIfAbsent(endpoint, key -> new BackendRateLimiter(key,
+                DEFAULT_PERMITS_PER_SECOND, DEFAULT_BURST, DEFAULT_INITIAL_CONCURRENCY, DEFAULT_MAX_CONCURRENCY));
+    }
+
+    /**
+     * 所有限流器的当前状态
+     */
+    public static List<Stats> getAllStats() {
+        List<Stats> stats = new ArrayList<>();
+        for (BackendRateLimiter limiter : LIMITERS.values()) {
+            stats.add(limiter.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * @param endpoint 接口名称，用于日志和统计
+     * @param permitsPerSecond 每秒发放的令牌数
+     * @param burst 令牌桶容量
+     * @param initialConcurrency 初始并发上限
+     * @param maxConcurrency 并发上限的最大值
+     */
+    public BackendRateLimiter(String endpoint, double permitsPerSecond, int burst,
+                              int initialConcurrency, int maxConcurrency) {
+        this.endpoint = endpoint;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.tokens = this.burst;
+        this.limit = Math.max(1, Math.min(initialConcurrency, this.maxConcurrency));
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 等待令牌和并发名额
+     * @param cancellation 取消后停止等待
+     * @return 请求结束后必须调用 {@link Permit#success(long)}、{@link Permit#throttled} 或 {@link Permit#failure} 之一
+     * @throws CancellationException 等待期间被取消
+     */
+    public Permit acquire(ReviewCancellation cancellation) throws InterruptedException {
+        Runnable unregister = cancellation.onCancel(this::wakeUp);
+        lock.lock();
+        try {
+            waiting++;
+            while (true) {
+                cancellation.checkCanceled();
+                long now = System.nanoTime();
+                refill(now);
+                long waitNanos;
+                if (inFlight >= (int) limit) {
+                    // 等待其他请求结束
+                    waitNanos = TimeUnit.SECONDS.toNanos(1);
+                } else if (now < pausedUntilNanos) {
+                    waitNanos = pausedUntilNanos - now;
+                } else if (tokens >= 1) {
+                    tokens -= 1;
+                    inFlight++;
+                    return new Permit(now);
+                } else {
+                    waitNanos = (long) ((1 - tokens) / permitsPerSecond * 1_000_000_000L);
+                }
+                changed.awaitNanos(Math.max(1, waitNanos));
+            }
+        } finally {
+            waiting--;
+            lock.unlock();
+            unregister.run();
+        }
+    }
+
+    /**
+     * 是否为限流响应（429 Too Many Requests 或 503 Service Unavailable）
+     */
+    public static boolean isThrottled(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    /**
+     * 解析 Retry-After 响应头，只支持秒数格式，无法解析时返回 null
+     */
+    public static @Nullable Duration parseRetryAfter(@Nullable String header) {
+        if (header == null) {
+            return null;
+        }
+        try {
+            long seconds = Long.parseLong(header.trim());
+            return seconds < 0 ? null : Duration.ofSeconds(Math.min(seconds, MAX_RETRY_AFTER_SECONDS));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            return new Stats(endpoint, (int) limit, inFlight, waiting, tokens, baselineLatencyMillis, throttledCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * permitsPerSecond);
+        lastRefillNanos = now;
+    }
+
+    private void wakeUp() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSuccess(long latencyNanos, long payloadBytes) {
+        double latencyMillis = latencyNanos / 1_000_000.0 / LatencyTracker.sizeScale(payloadBytes);
+        lock.lock();
+        try {
+            inFlight--;
+            if (baselineLatencyMillis == 0) {
+                baselineLatencyMillis = latencyMillis;
+            } else if (latencyMillis > baselineLatencyMillis * LATENCY_TOLERANCE + LATENCY_SLACK_MILLIS) {
+                // 排队延迟明显上升，说明后端已经饱和
+                decrease();
+            } else {
+                limit = Math.min(maxConcurrency, limit + 1.0 / limit);
+            }
+            baselineLatencyMillis += (latencyMillis - baselineLatencyMillis) * BASELINE_ALPHA;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onThrottled(Duration retryAfter) {
+        lock.lock();
+        try {
+            inFlight--;
+            throttledCount++;
+            decrease();
+            pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + retryAfter.toNanos());
+            tokens = Math.min(tokens, 0);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        LOG.warn(endpoint + " 返回限流响应，并发上限减半，暂停 " + retryAfter.toMillis() + "ms");
+    }
+
+    private void onFailure() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease() {
+        limit = Math.max(1, limit / 2);
+    }
+
+    /**
+     * 一次请求占用的名额
+     */
+    public final class Permit {
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * 请求成功
+         * @param payloadBytes 请求内容大小，用于归一化延迟
+         */
+        public void success(long payloadBytes) {
+            if (markReleased()) {
+                onSuccess(System.nanoTime() - startNanos, payloadBytes);
+            }
+        }
+
+        /**
+         * 后端返回 429/503
+         * @param retryAfter 响应中的 Retry-After，没有时传 null
+         */
+        public void throttled(@Nullable Duration retryAfter) {
+            if (markReleased()) {
+                onThrottled(retryAfter == null ? DEFAULT_BACKOFF : retryAfter);
+            }
+        }
+
+        /**
+         * 其他失败或取消，不调整并发上限
+         */
+        public void failure() {
+            if (markReleased()) {
+                onFailure();
+            }
+        }
+
+        private synchronized boolean markReleased() {
+            if (released) {
+                return false;
+            }
+            released = true;
+            return true;
+        }
+    }
+
+    /**
+     * 限流器状态快照
+     */
+    public static class Stats {
+        private final String endpoint;
+        private final int concurrencyLimit;
+        private final int inFlight;
+        private final int queueLength;
+        private final double availableTokens;
+        private final double baselineLatencyMillis;
+        private final long throttledCount;
+
+        public Stats(String endpoint, int concurrencyLimit, int inFlight, int queueLength,
+                     double availableTokens, double baselineLatencyMillis, long throttledCount) {
+            this.endpoint = endpoint;
+            this.concurrencyLimit = concurrencyLimit;
+            this.inFlight = inFlight;
+            this.queueLength = queueLength;
+            this.availableTokens = availableTokens;
+            this.baselineLatencyMillis = baselineLatencyMillis;
+            this.throttledCount = throttledCount;
+        }
+
+        public String getEndpoint() { return endpoint; }
+        public int getConcurrencyLimit() { return concurrencyLimit; }
+        public int getInFlight() { return inFlight; }
+        public int getQueueLength() { return queueLength; }
+        public double getAvailableTokens() { return availableTokens; }
+        public double getBaselineLatencyMillis() { return baselineLatencyMillis; }
+        public long getThrottledCount() { return throttledCount; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: 并发上限 %d，进行中 %d，排队 %d，可用令牌 %.1f，基线延迟 %.0fms，限流次数 %d",
+                    endpoint, concurrencyLimit, inFlight, queueLength, availableTokens,
+                    baselineLatencyMillis, throttledCount);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.renrui.review.service;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 审查后端延迟统计
+ * 保存最近的请求延迟，按百分位数推算超时时间和对冲请求的发送时机，代替固定的 30 秒超时。
+ *
+ * 延迟按请求内容大小归一化后保存（每 {@link #SIZE_UNIT_BYTES} 字节视为多一个单位），
+ * 推算时再按本次请求的大小放大，大文件不会因为小文件的统计而过早超时。
+ */
+public class LatencyTracker {
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration MIN_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration MAX_TIMEOUT = Duration.ofSeconds(120);
+    private static final long SIZE_UNIT_BYTES = 16 * 1024;
+    private static final int WINDOW_SIZE = 256;
+    // 样本数不足时使用默认超时，不发送对冲请求
+    private static final int MIN_SAMPLES = 20;
+    private static final double TIMEOUT_FACTOR = 1.5;
+
+    private static final Map<String, LatencyTracker> TRACKERS = new ConcurrentHashMap<>();
+
+    // 以下字段由 this 保护
+    private final double[] samples = new double[WINDOW_SIZE];
+    private int count;
+    private int next;
+
+    /**
+     * 获取指定后端的延迟统计
+     * @param backend 后端名称，如 {@code AiCodeReviewService.ServiceType} 的名称
+     */
+    public static LatencyTracker forBackend(String backend) {
+        return TRACKERS.computeIfAbsent(backend, key -> new LatencyTracker());
+    }
+
+    /**
+     * 记录一次请求的延迟
+     * @param latency 请求耗时，超时的请求按超时时间记录
+     * @param payloadBytes 请求内容大小
+     */
+    public synchronized void record(Duration latency, long payloadBytes) {
+        samples[next] = latency.toMillis() / sizeScale(payloadBytes);
+        next = (next + 1) % WINDOW_SIZE;
+        count = Math.min(count + 1, WINDOW_SIZE);
+    }
+
+    /**
+     * 按本次请求大小推算的延迟百分位数，样本不足时返回 null
+     * @param percentile 0 到 1 之间，如 0.95
+     */
+    public @Nullable Duration percentile(double percentile, long payloadBytes) {
+        double[] sorted;
+        synchronized (this) {
+            if (count < MIN_SAMPLES) {
+                return null;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1);
+        return Duration.ofMillis((long) (sorted[Math.max(0, index)] * sizeScale(payloadBytes)));
+    }
+
+    /**
+     * 超时时间：p99 × 系数，限制在 5 秒到 120 秒之间；样本不足时为 30 秒
+     */
+    public Duration timeoutFor(long payloadBytes) {
+        Duration p99 = percentile(0.99, payloadBytes);
+        if (p99 == null) {
+            return DEFAULT_TIMEOUT;
+        }
+        Duration timeout = Duration.ofMillis((long) (p99.toMillis() * TIMEOUT_FACTOR));
+        if (timeout.compareTo(MIN_TIMEOUT) < 0) {
+            return MIN_TIMEOUT;
+        }
+        return timeout.compareTo(MAX_TIMEOUT) > 0 ? MAX_TIMEOUT : timeout;
+    }
+
+    /**
+     * 对冲请求的发送时机：p95，样本不足时返回 null 表示不对冲
+     */
+    public @Nullable Duration hedgeDelayFor(long payloadBytes) {
+        return percentile(0.95, payloadBytes);
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    static double sizeScale(long payloadBytes) {
+        return 1.0 + (double) Math.max(0, payloadBytes) / SIZE_UNIT_BYTES;
+    }
+}
@@ -0,0 +1,307 @@
+package com.renrui.review.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.renrui.presubmit.codereview.model.Issue;
+import com.renrui.presubmit.codereview.service.AiCodeReviewService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * 审查请求批处理
+ * 在一个很短的时间窗口内收集单文件审查请求，合并成一次 {@link AiCodeReviewService#reviewChanges} 调用，
+ * 再按问题所在文件把结果分发给各个调用方。小文件的审查耗时主要花在连接、鉴权和模型预热上，合并后吞吐量更高。
+ *
+ * 窗口到期、累计内容超过字节上限或文件数达到上限时立即发送。窗口为 0 时不做合并。
+ * 批次内所有请求都被取消后，取消该批次的后端调用。
+ * 批次中有无法对应到文件的问题时，这些问题只交给批次中的第一个请求，整个批次的结果都标记为不可缓存。
+ */
+public class ReviewBatcher {
+    private static final Logger LOG = Logger.getInstance(ReviewBatcher.class);
+
+    private final AiCodeReviewService backend;
+    private final ReviewScheduler scheduler;
+    private final long windowMillis;
+    private final long maxBatchBytes;
+    private final int maxBatchFiles;
+    private final ScheduledExecutorService timer;
+    // 已发送但未完成的批次，关闭时取消
+    private final Set<ReviewCancellation> activeBatches = ConcurrentHashMap.newKeySet();
+
+    // 以下字段由 this 保护
+    private List<PendingReview> pending = new ArrayList<>();
+    private long pendingBytes;
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param backend 实际的审查服务
+     * @param scheduler 批次在该调度器上执行，批次优先级取其中最高的请求优先级
+     * @param window 收集请求的时间窗口
+     * @param maxBatchBytes 单个批次的内容字节上限，单个文件超过上限时单独成批
+     * @param maxBatchFiles 单个批次的文件数上限
+     */
+    public ReviewBatcher(AiCodeReviewService backend, ReviewScheduler scheduler,
+                         Duration window, long maxBatchBytes, int maxBatchFiles) {
+        this.backend = backend;
+        this.scheduler = scheduler;
+        this.windowMillis = Math.max(0, window.toMillis());
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchFiles = Math.max(1, maxBatchFiles);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AI-Review-Batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交单个文件的审查请求
+     * @param filePath 文件路径，结果按该路径分发
+     * @param content 文件内容
+     * @param priority 调度优先级
+     * @return 该文件的审查结果
+     */
+    public CompletableFuture<FileResult> submit(String filePath, String content, ReviewScheduler.Priority priority) {
+        return submit(filePath, content, priority, ReviewCancellation.NONE);
+    }
+
+    /**
+     * 提交可取消的单文件审查请求
+     * @param cancellation 取消令牌，取消后该请求以 {@link CancellationException} 结束
+     */
+    public CompletableFuture<FileResult> submit(String filePath, String content, ReviewScheduler.Priority priority,
+                                                ReviewCancellation cancellation) {
+        return submit(filePath, content, priority, cancellation, payloadChars -> { });
+    }
+
+    /**
+     * 提交可取消的单文件审查请求，并在所在批次发送时得到整个批次的大小
+     * 调用方的等待超时应按整个批次推算，而不是单个文件
+     * @param onSent 批次发送时调用，参数为批次内所有文件路径和内容的字符数之和
+     */
+    public CompletableFuture<FileResult> submit(String filePath, String content, ReviewScheduler.Priority priority,
+                                                ReviewCancellation cancellation, LongConsumer onSent) {
+        PendingReview review = new PendingReview(filePath, content, priority, onSent);
+        Runnable unregister = cancellation.onCancel(() -> review.future.cancel(false));
+        review.future.whenComplete((result, error) -> unregister.run());
+        if (review.future.isDone()) {
+            return review.future;
+        }
+        long size = (long) content.length() * 3;   // 按 UTF-8 最大长度估算，避免逐个编码
+        List<List<PendingReview>> ready = new ArrayList<>(2);
+        synchronized (this) {
+            // 放不下或同一文件已在批次中时，先发送当前批次
+            if (!pending.isEmpty() && (pendingBytes + size > maxBatchBytes || containsPath(filePath))) {
+                ready.add(drain());
+            }
+            pending.add(review);
+            pendingBytes += size;
+            if (windowMillis == 0 || pending.size() >= maxBatchFiles || pendingBytes >= maxBatchBytes) {
+                ready.add(drain());
+            } else if (scheduledFlush == null) {
+                try {
+                    scheduledFlush = timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    ready.add(drain());
+                }
+            }
+        }
+        for (List<PendingReview> batch : ready) {
+            send(batch);
+        }
+        return review.future;
+    }
+
+    /**
+     * 立即发送当前收集到的请求
+     */
+    public void flush() {
+        List<PendingReview> ready;
+        synchronized (this) {
+            ready = drain();
+        }
+        if (!ready.isEmpty()) {
+            send(ready);
+        }
+    }
+
+    /**
+     * 关闭批处理，丢弃未发送的请求并取消进行中的批次
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        List<PendingReview> dropped;
+        synchronized (this) {
+            dropped = drain();
+        }
+        for (PendingReview review : dropped) {
+            review.future.cancel(false);
+        }
+        for (ReviewCancellation batch : activeBatches) {
+            batch.cancel();
+        }
+    }
+
+    private boolean containsPath(String filePath) {
+        for (PendingReview review : pending) {
+            if (review.filePath.equals(filePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<PendingReview> drain() {
+        List<PendingReview> ready = pending;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return ready;
+    }
+
+    private void send(List<PendingReview> pendingBatch) {
+        // 等待期间已取消的请求不再发送
+        List<PendingReview> batch = new ArrayList<>(pendingBatch.size());
+        for (PendingReview review : pendingBatch) {
+            if (!review.future.isDone()) {
+                batch.add(review);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        ReviewScheduler.Priority priority = ReviewScheduler.Priority.BACKGROUND;
+        Map<String, String> files = new LinkedHashMap<>();
+        long payloadChars = 0;
+        for (PendingReview review : batch) {
+            files.put(review.filePath, review.content);
+            payloadChars += review.filePath.length() + review.content.length();
+            if (review.priority.compareTo(priority) < 0) {
+                priority = review.priority;
+            }
+        }
+        for (PendingReview review : batch) {
+            review.onSent.accept(payloadChars);
+        }
+        if (batch.size() > 1) {
+            LOG.debug("合并审查请求: " + batch.size() + " 个文件");
+        }
+
+        ReviewCancellation batchCancellation = new ReviewCancellation();
+        activeBatches.add(batchCancellation);
+        for (PendingReview review : batch) {
+            review.future.whenComplete((result, error) -> {
+                if (review.future.isCancelled() && allDone(batch)) {
+                    batchCancellation.cancel();
+                }
+            });
+        }
+        scheduler.submit(priority, batchCancellation, () -> backend.reviewChanges(files, "", batchCancellation))
+                .whenComplete((issues, error) -> {
+                    activeBatches.remove(batchCancellation);
+                    if (error != null) {
+                        for (PendingReview review : batch) {
+                            review.future.completeExceptionally(error);
+                        }
+                    } else {
+                        dispatch(batch, issues);
+                    }
+                });
+    }
+
+    private static boolean allDone(List<PendingReview> batch) {
+        for (PendingReview review : batch) {
+            if (!review.future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按文件路径把批次结果分发给各个请求，无法对应到文件的问题只发给第一个请求，避免重复显示
+     */
+    private static void dispatch(List<PendingReview> batch, List<Issue> issues) {
+        Map<String, List<Issue>> byFile = new HashMap<>();
+        for (PendingReview review : batch) {
+            byFile.put(review.filePath, new ArrayList<>());
+        }
+        List<Issue> unmatched = new ArrayList<>();
+        for (Issue issue : issues) {
+            List<Issue> target = issue.getFile() == null ? null : byFile.get(issue.getFile());
+            if (target != null) {
+                target.add(issue);
+            } else {
+                unmatched.add(issue);
+            }
+        }
+        if (!unmatched.isEmpty()) {
+            LOG.debug("有 " + unmatched.size() + " 个问题无法对应到文件，本批结果不缓存");
+            byFile.get(batch.get(0).filePath).addAll(unmatched);
+        }
+        for (PendingReview review : batch) {
+            review.future.complete(new FileResult(byFile.get(review.filePath), unmatched.isEmpty()));
+        }
+    }
+
+    /**
+     * 单个文件在批次中的审查结果
+     */
+    public static final class FileResult {
+        private final List<Issue> issues;
+        private final boolean cacheable;
+
+        public FileResult(List<Issue> issues, boolean cacheable) {
+            this.issues = issues;
+            this.cacheable = cacheable;
+        }
+
+        /**
+         * 该文件的问题，批次中第一个请求的结果还包含无法对应到文件的问题
+         */
+        public List<Issue> getIssues() {
+            return issues;
+        }
+
+        /**
+         * 批次中所有问题都能对应到文件时才可以按文件缓存，
+         * 否则无法对应的问题所属的文件会被缓存为没有问题
+         */
+        public boolean isCacheable() {
+            return cacheable;
+        }
+    }
+
+    private static final class PendingReview {
+        private final String filePath;
+        private final String content;
+        private final ReviewScheduler.Priority priority;
+        private final LongConsumer onSent;
+        private final CompletableFuture<FileResult> future = new CompletableFuture<>();
+
+        private PendingReview(String filePath, String content, ReviewScheduler.Priority priority,
+                              LongConsumer onSent) {
+            this.filePath = filePath;
+            this.content = content;
+            this.priority = priority;
+            this.onSent = onSent;
+        }
+    }
+}
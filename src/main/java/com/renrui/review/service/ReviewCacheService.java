@@ -0,0 +1,42 @@
+package com.renrui.review.service;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.renrui.review.cache.ReviewCache;
+
+/**
+ * 应用级审查缓存服务
+ * 缓存以内容为键，所有项目共享同一个实例
+ */
+public class ReviewCacheService implements Disposable {
+    private volatile ReviewCache reviewCache;
+
+    public static ReviewCacheService getInstance() {
+        return ApplicationManager.getApplication().getService(ReviewCacheService.class);
+    }
+
+    /**
+     * 获取审查缓存，第一次调用时才创建，避免影响 IDE 启动
+     */
+    public ReviewCache getReviewCache() {
+        ReviewCache cache = reviewCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = reviewCache;
+                if (cache == null) {
+                    cache = ReviewCache.createPersistent();
+                    reviewCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public void dispose() {
+        ReviewCache cache = reviewCache;
+        if (cache != null) {
+            cache.dispose();
+        }
+    }
+}
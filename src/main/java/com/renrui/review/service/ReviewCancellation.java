@@ -0,0 +1,135 @@
+package com.renrui.review.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 审查取消令牌
+ * 从进度条、提交对话框或项目关闭一路传递到审查后端，取消时中断 HTTP 请求和模型推理，丢弃排队中的任务。
+ * 后端通过 {@link #onCancel} 注册取消动作，在耗时步骤之间调用 {@link #checkCanceled}。
+ */
+public final class ReviewCancellation {
+    private static final Logger LOG = Logger.getInstance(ReviewCancellation.class);
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    /**
+     * 不会被取消的令牌，用于不需要取消的调用方
+     */
+    public static final ReviewCancellation NONE = new ReviewCancellation();
+
+    // 由 this 保护
+    private final List<Runnable> handlers = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled || this == NONE) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(handlers);
+            handlers.clear();
+        }
+        for (Runnable handler : toRun) {
+            try {
+                handler.run();
+            } catch (RuntimeException e) {
+                LOG.warn("执行取消动作失败", e);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 已取消时抛出 {@link CancellationException}
+     */
+    public void checkCanceled() {
+        if (cancelled) {
+            throw new CancellationException("审查已取消");
+        }
+    }
+
+    /**
+     * 注册取消动作，已取消时立即执行
+     * @return 用于注销该动作，调用结束后应注销，避免长期存在的令牌持有过多引用
+     */
+    public Runnable onCancel(Runnable handler) {
+        synchronized (this) {
+            if (!cancelled) {
+                handlers.add(handler);
+                return () -> {
+                    synchronized (this) {
+                        handlers.remove(handler);
+                    }
+                };
+            }
+        }
+        handler.run();
+        return () -> { };
+    }
+
+    /**
+     * 在后台任务中等待审查结果，进度条被取消时取消令牌和 future，而不是一直阻塞在 {@code future.get()} 上
+     * @throws ProcessCanceledException 用户取消了进度条
+     */
+    public <T> T await(CompletableFuture<T> future, ProgressIndicator indicator)
+            throws ExecutionException, InterruptedException {
+        try {
+            return awaitUntil(future, indicator, false, 0);
+        } catch (TimeoutException e) {
+            // 没有截止时间，不会超时
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 在截止时间之前等待审查结果，超时时不取消审查，由调用方决定是否使用已有的部分结果
+     * @param deadlineNanos {@link System#nanoTime()} 表示的截止时间
+     * @throws TimeoutException 到达截止时间仍未完成
+     * @throws ProcessCanceledException 用户取消了进度条
+     */
+    public <T> T await(CompletableFuture<T> future, ProgressIndicator indicator, long deadlineNanos)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        return awaitUntil(future, indicator, true, deadlineNanos);
+    }
+
+    private <T> T awaitUntil(CompletableFuture<T> future, ProgressIndicator indicator,
+                             boolean hasDeadline, long deadlineNanos)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        try {
+            while (true) {
+                indicator.checkCanceled();
+                long waitNanos = TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MILLIS);
+                if (hasDeadline) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new TimeoutException("审查超出时间预算");
+                    }
+                    waitNanos = Math.min(waitNanos, remaining);
+                }
+                try {
+                    return future.get(waitNanos, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ignored) {
+                    // 继续检查进度条状态和截止时间
+                }
+            }
+        } catch (ProcessCanceledException e) {
+            cancel();
+            future.cancel(false);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.renrui.review.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * 相同审查内容的并发请求合并为一次审查
+ * 以审查内容的hash为键，第一个调用方发起审查，审查完成前相同内容的调用方直接等待同一个结果，
+ * 例如保存时的预审查还没返回就开始提交，提交不会再为同一内容调用一次后端。
+ *
+ * 每个调用方拿到结果的副本，可以单独取消；所有调用方都取消后才取消审查本身。
+ * 复用的审查保持发起时的调度优先级。
+ */
+public class ReviewCoalescer<T> {
+    private final ConcurrentMap<String, Flight<T>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 发起或复用审查
+     * @param key 审查内容的hash
+     * @param cancellation 调用方的取消令牌，取消后调用方的副本以 {@link java.util.concurrent.CancellationException} 结束
+     * @param review 没有进行中的审查时调用，参数为共享审查的取消令牌；需要缓存的结果应在返回的 future 完成前写入，
+     *               审查结束后到达的调用方可以直接命中缓存
+     * @return 调用方自己的结果副本
+     */
+    public CompletableFuture<T> review(String key, ReviewCancellation cancellation,
+                                       Function<ReviewCancellation, CompletableFuture<T>> review) {
+        Flight<T> created = new Flight<>();
+        Flight<T> flight;
+        while (true) {
+            // 已取消的审查不再复用，由当前调用方重新发起
+            flight = inFlight.compute(key, (ignored, existing) ->
+                    existing == null || existing.cancellation.isCancelled() ? created : existing);
+            if (flight.acquire()) {
+                break;
+            }
+            inFlight.remove(key, flight);
+        }
+        if (flight == created) {
+            start(key, created, review);
+        }
+
+        Flight<T> shared = flight;
+        CompletableFuture<T> copy = shared.result.copy();
+        Runnable unregister = cancellation.onCancel(() -> {
+            if (copy.cancel(false)) {
+                shared.release();
+            }
+        });
+        copy.whenComplete((result, error) -> unregister.run());
+        return copy;
+    }
+
+    /**
+     * @return 该内容是否有进行中的审查
+     */
+    public boolean isInFlight(String key) {
+        return inFlight.containsKey(key);
+    }
+
+    private void start(String key, Flight<T> flight, Function<ReviewCancellation, CompletableFuture<T>> review) {
+        CompletableFuture<T> started;
+        try {
+            started = review.apply(flight.cancellation);
+        } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((result, error) -> {
+            inFlight.remove(key, flight);
+            if (error == null) {
+                flight.result.complete(result);
+            } else {
+                flight.result.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * 一次进行中的审查，记录等待它的调用方数量，全部取消后取消审查
+     */
+    private static final class Flight<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final ReviewCancellation cancellation = new ReviewCancellation();
+        // 以下字段由 this 保护
+        private int waiters;
+        private boolean abandoned;
+
+        /**
+         * @return 调用方已全部取消、审查正在取消时返回 false
+         */
+        private synchronized boolean acquire() {
+            if (abandoned) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        private void release() {
+            synchronized (this) {
+                if (--waiters > 0) {
+                    return;
+                }
+                abandoned = true;
+            }
+            cancellation.cancel();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.renrui.review.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.renrui.presubmit.codereview.settings.AiReviewSettings;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界的优先级审查调度器
+ * 每个审查只占用一个线程；队列按优先级出队，同优先级先进先出。
+ * 队列长度超过上限时直接拒绝新的请求，避免大提交在 IDE 中堆积大量线程。
+ *
+ * 审查时间几乎都花在等待 HTTP 响应上，运行环境支持虚拟线程（JDK 21+）时可以让每个审查运行在
+ * 独立的虚拟线程上，不占用平台线程；否则使用固定大小的平台线程池。
+ */
+public class ReviewScheduler {
+    private static final Logger LOG = Logger.getInstance(ReviewScheduler.class);
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * 审查优先级，按声明顺序从高到低
+     */
+    public enum Priority {
+        // 用户主动触发的审查
+        INTERACTIVE,
+        // 提交时的审查
+        COMMIT,
+        // 后台预审查、超时刷新等
+        BACKGROUND
+    }
+
+    /**
+     * 执行模式
+     */
+    public enum ExecutionMode {
+        // 固定大小的平台线程池
+        PLATFORM,
+        // 每个审查一个虚拟线程
+        VIRTUAL
+    }
+
+    private final PriorityBlockingQueue<PrioritizedTask<?>> queue = new PriorityBlockingQueue<>();
+    private final Semaphore permits;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final ExecutionMode executionMode;
+    private final ExecutorService executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean shutdown;
+
+    /**
+     * @param concurrency 同时执行的审查数
+     * @param queueCapacity 等待队列的最大长度
+     */
+    public ReviewScheduler(int concurrency, int queueCapacity) {
+        this(concurrency, queueCapacity, ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * @param concurrency 同时执行的审查数
+     * @param queueCapacity 等待队列的最大长度
+     * @param executionMode 执行模式，运行环境不支持虚拟线程时回退到平台线程
+     */
+    public ReviewScheduler(int concurrency, int queueCapacity, ExecutionMode executionMode) {
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.permits = new Semaphore(concurrency);
+        ExecutorService virtualExecutor = executionMode == ExecutionMode.VIRTUAL ? newVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            this.executionMode = ExecutionMode.VIRTUAL;
+            this.executor = virtualExecutor;
+        } else {
+            this.executionMode = ExecutionMode.PLATFORM;
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(concurrency, concurrency,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new WorkerThreadFactory());
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        }
+        LOG.info("审查调度器已创建，模式: " + this.executionMode + "，并发数: " + concurrency);
+    }
+
+    /**
+     * 根据插件设置创建调度器
+     */
+    public static ReviewScheduler createDefault() {
+        AiReviewSettings settings = AiReviewSettings.getInstance();
+        boolean virtual = settings.isUseVirtualThreads() && isVirtualThreadSupported();
+        return new ReviewScheduler(
+                virtual ? settings.getVirtualThreadConcurrency() : settings.getReviewConcurrency(),
+                settings.getReviewQueueCapacity(),
+                virtual ? ExecutionMode.VIRTUAL : ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * 当前运行环境是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 提交审查任务
+     * @param priority 优先级
+     * @param work 审查逻辑，在工作线程中执行
+     * @return 审查结果；队列已满或调度器已关闭时以 {@link RejectedExecutionException} 异常完成
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (shutdown) {
+            future.completeExceptionally(new RejectedExecutionException("审查调度器已关闭"));
+            return future;
+        }
+        if (queue.size() >= queueCapacity) {
+            LOG.warn("审查队列已满，拒绝 " + priority + " 请求，队列长度: " + queueCapacity);
+            future.completeExceptionally(new RejectedExecutionException("审查队列已满"));
+            return future;
+        }
+        PrioritizedTask<T> task = new PrioritizedTask<>(priority, sequence.getAndIncrement(), work, future);
+        // 调用方取消后立即移出队列，不再占用排队位置
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                queue.remove(task);
+            }
+        });
+        queue.offer(task);
+        dispatch();
+        return future;
+    }
+
+    /**
+     * 提交可取消的审查任务，令牌取消时丢弃排队中的任务，正在执行的任务由 work 自行响应令牌
+     * @param cancellation 取消令牌
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, ReviewCancellation cancellation, Callable<T> work) {
+        if (cancellation.isCancelled()) {
+            return CompletableFuture.failedFuture(new CancellationException("审查已取消"));
+        }
+        CompletableFuture<T> future = submit(priority, work);
+        Runnable unregister = cancellation.onCancel(() -> future.cancel(false));
+        future.whenComplete((result, error) -> unregister.run());
+        return future;
+    }
+
+    /**
+     * 在并发数允许的范围内，按优先级取出等待中的任务交给执行器
+     */
+    private void dispatch() {
+        while (!shutdown && !queue.isEmpty() && permits.tryAcquire()) {
+            PrioritizedTask<?> task = queue.poll();
+            if (task == null) {
+                permits.release();
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                task.reject(e);
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getActiveCount() {
+        return concurrency - permits.availablePermits();
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * 关闭调度器，等待中的任务不再执行
+     */
+    public void shutdown() {
+        shutdown = true;
+        RejectedExecutionException rejected = new RejectedExecutionException("审查调度器已关闭");
+        PrioritizedTask<?> task;
+        while ((task = queue.poll()) != null) {
+            task.reject(rejected);
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(800, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 通过反射创建虚拟线程执行器，插件以 JDK 17 为编译目标
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.info("运行环境不支持虚拟线程，使用平台线程池");
+            return null;
+        }
+    }
+
+    private static final class PrioritizedTask<T> implements Runnable, Comparable<PrioritizedTask<?>> {
+        private final Priority priority;
+        private final long sequence;
+        private final Callable<T> work;
+        private final CompletableFuture<T> future;
+
+        private PrioritizedTask(Priority priority, long sequence, Callable<T> work, CompletableFuture<T> future) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.work = work;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            // 调用方已取消或超时放弃的任务不再执行
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(work.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void reject(RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask<?> other) {
+            int result = priority.compareTo(other.priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AI-Review-Worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
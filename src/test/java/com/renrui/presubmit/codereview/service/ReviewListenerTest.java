@@ -0,0 +1,29 @@
+package com.renrui.presubmit.codereview.service;
+
+import com.renrui.presubmit.codereview.model.Issue;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReviewListenerTest {
+
+    @Test
+    void shouldGroupIssuesByFile() {
+        List<Map<String, List<Issue>>> received = new ArrayList<>();
+        Issue bug = new Issue(Issue.IssueType.BUG, "空指针", "A.java", 3, "判空");
+        Issue style = new Issue(Issue.IssueType.STYLE, "命名", "Other.java", 1, "重命名");
+
+        ReviewListener.notifyByFile(received::add, List.of("A.java", "B.java"), List.of(bug, style));
+
+        assertEquals(1, received.size());
+        Map<String, List<Issue>> issuesByFile = received.get(0);
+        assertEquals(List.of(bug), issuesByFile.get("A.java"));
+        // 没有问题的文件也要通知，便于清除旧标记
+        assertEquals(List.of(), issuesByFile.get("B.java"));
+        assertEquals(List.of(style), issuesByFile.get("Other.java"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.renrui.presubmit.codereview.service.impl;
+
+import com.renrui.presubmit.codereview.model.Issue;
+import com.renrui.presubmit.codereview.service.AiCodeReviewService;
+import com.renrui.presubmit.codereview.service.ReviewListener;
+import com.renrui.review.service.LatencyTracker;
+import com.renrui.review.service.ReviewCancellation;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveAiReviewServiceTest {
+
+    @Test
+    void shouldNotTimeOutWhileQueuedInRateLimiter() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < 20; i++) {
+            tracker.record(Duration.ofMillis(1), 0);
+        }
+        // 超时为下限 5 秒，排队时间超过超时时间，发出后立即返回
+        QueuedBackend backend = new QueuedBackend(Duration.ofMillis(5500));
+        AdaptiveAiReviewService service = new AdaptiveAiReviewService(backend, tracker, false);
+
+        List<Issue> issues = service.reviewChanges(Map.of("A.java", "class A {}"), "");
+
+        assertEquals(1, issues.size());
+    }
+
+    @Test
+    void shouldNotCountQueueTimeAsLatency() {
+        LatencyTracker tracker = new LatencyTracker();
+        AdaptiveAiReviewService service = new AdaptiveAiReviewService(
+                new QueuedBackend(Duration.ofMillis(50)), tracker, false);
+
+        for (int i = 0; i < 20; i++) {
+            service.reviewChanges(Map.of("A.java", "class A {}"), "");
+        }
+
+        assertTrue(tracker.percentile(0.5, 0).toMillis() < 50);
+    }
+
+    /**
+     * 先在“限流器”中排队，发出请求后立即返回一个问题
+     */
+    private static class QueuedBackend implements AiCodeReviewService {
+        private final Duration queueTime;
+
+        QueuedBackend(Duration queueTime) {
+            this.queueTime = queueTime;
+        }
+
+        @Override
+        public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage) {
+            return reviewChanges(changedFiles, commitMessage, ReviewCancellation.NONE, ReviewListener.NONE);
+        }
+
+        @Override
+        public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                         ReviewCancellation cancellation, ReviewListener listener) {
+            try {
+                Thread.sleep(queueTime.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cancellation.checkCanceled();
+            listener.onRequestSent();
+            return List.of(new Issue(Issue.IssueType.WARNING, "问题", "A.java", 1, ""));
+        }
+
+        @Override
+        public boolean isRateLimited() {
+            return true;
+        }
+
+        @Override
+        public ServiceType getServiceType() {
+            return ServiceType.CLOUD;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.renrui.review.cache;
+
+import com.renrui.presubmit.codereview.model.Issue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskReviewCacheTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldSurviveReopen() {
+        DiskReviewCache cache = new DiskReviewCache(tempDir, 1024 * 1024);
+        cache.put("hash-1", new ReviewResult(List.of(issue("问题一")), "hash-1", false));
+        cache.close();
+
+        DiskReviewCache reopened = new DiskReviewCache(tempDir, 1024 * 1024);
+        ReviewResult result = reopened.get("hash-1");
+        assertNotNull(result);
+        assertEquals("问题一", result.getIssues().get(0).getMessage());
+        reopened.close();
+    }
+
+    @Test
+    void shouldNotReturnRemovedEntryAfterReopen() {
+        DiskReviewCache cache = new DiskReviewCache(tempDir, 1024 * 1024);
+        cache.put("hash-1", new ReviewResult(List.of(issue("问题一")), "hash-1", false));
+        cache.remove("hash-1");
+        cache.close();
+
+        DiskReviewCache reopened = new DiskReviewCache(tempDir, 1024 * 1024);
+        assertNull(reopened.get("hash-1"));
+        reopened.close();
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedWhenOverCapacity() {
+        DiskReviewCache probe = new DiskReviewCache(tempDir.resolve("probe"), Long.MAX_VALUE);
+        probe.put("probe", new ReviewResult(List.of(issue("x")), "p", false));
+        long entrySize = probe.getLiveBytes();
+        probe.close();
+
+        DiskReviewCache cache = new DiskReviewCache(tempDir, entrySize * 2 + entrySize / 2);
+        cache.put("a", new ReviewResult(List.of(issue("x")), "a", false));
+        cache.put("b", new ReviewResult(List.of(issue("x")), "b", false));
+        assertNotNull(cache.get("a"));
+        cache.put("c", new ReviewResult(List.of(issue("x")), "c", false));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        cache.close();
+    }
+
+    @Test
+    void shouldCountRecordHeadersAsLiveBytes() throws Exception {
+        DiskReviewCache cache = new DiskReviewCache(tempDir, 1024 * 1024);
+        for (int i = 0; i < 100; i++) {
+            cache.put("hash-" + i, new ReviewResult(List.of(issue("问题" + i)), "hash-" + i, false));
+        }
+
+        assertEquals(Files.size(tempDir.resolve("review-results.log")), cache.getLiveBytes());
+        cache.close();
+    }
+
+    private static Issue issue(String message) {
+        return new Issue(Issue.IssueType.WARNING, message, "Demo.java", 1, "");
+    }
+}
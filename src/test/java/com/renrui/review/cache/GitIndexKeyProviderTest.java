@@ -0,0 +1,111 @@
+package com.renrui.review.cache;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 测试用的 index 文件由 git 生成：
+ * <pre>
+ * printf 'class A {}\n' > Api.java; printf 'class B {}\n' > B.java; printf 'class C {}\n' > src/C.java
+ * touch -d '2024-01-01 00:00:00 UTC' Api.java B.java src/C.java
+ * git update-index --add Api.java B.java src/C.java
+ * git update-index --index-version 2                # index-v2
+ * git update-index --skip-worktree Api.java         # index-v3，Api.java 带扩展标志
+ * </pre>
+ * Api.java 的路径长度使扩展标志的 2 字节跨过 8 字节对齐边界，后续条目的偏移随之改变。
+ */
+class GitIndexKeyProviderTest {
+    private static final long MTIME_MILLIS = 1704067200000L;
+    private static final long SIZE = 11;
+    private static final String API_BLOB = "blob:a869c28495266ce277963307009946887ad25470";
+    private static final String B_BLOB = "blob:3a43d09b4ecc91f49f4e25272e9db41257a87462";
+    private static final String C_BLOB = "blob:2be77991fffe5930d383591765e35755f705eca0";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void shouldReadBlobIdsFromVersion2Index() throws IOException {
+        installIndex("index-v2");
+        GitIndexKeyProvider provider = new GitIndexKeyProvider();
+
+        assertEquals(API_BLOB, provider.getContentKey(file("Api.java", SIZE, MTIME_MILLIS)));
+        assertEquals(B_BLOB, provider.getContentKey(file("B.java", SIZE, MTIME_MILLIS)));
+        assertEquals(C_BLOB, provider.getContentKey(file("src/C.java", SIZE, MTIME_MILLIS)));
+    }
+
+    @Test
+    void shouldReadEntriesAfterExtendedFlagsInVersion3Index() throws IOException {
+        installIndex("index-v3");
+        GitIndexKeyProvider provider = new GitIndexKeyProvider();
+
+        assertEquals(API_BLOB, provider.getContentKey(file("Api.java", SIZE, MTIME_MILLIS)));
+        assertEquals(B_BLOB, provider.getContentKey(file("B.java", SIZE, MTIME_MILLIS)));
+        assertEquals(C_BLOB, provider.getContentKey(file("src/C.java", SIZE, MTIME_MILLIS)));
+    }
+
+    @Test
+    void shouldNotTrustRacyEntry() throws IOException {
+        // index 与文件在同一秒内写入，文件可能在写入 index 之后又被修改
+        installIndex("index-v2", FileTime.fromMillis(MTIME_MILLIS + 500));
+        GitIndexKeyProvider provider = new GitIndexKeyProvider();
+
+        assertNull(provider.getContentKey(file("B.java", SIZE, MTIME_MILLIS)));
+    }
+
+    @Test
+    void shouldNotMatchModifiedFile() throws IOException {
+        installIndex("index-v2");
+        GitIndexKeyProvider provider = new GitIndexKeyProvider();
+
+        assertNull(provider.getContentKey(file("B.java", SIZE + 1, MTIME_MILLIS)));
+        assertNull(provider.getContentKey(file("B.java", SIZE, MTIME_MILLIS + 1000)));
+    }
+
+    @Test
+    void shouldReturnNullForPathNotInIndex() throws IOException {
+        installIndex("index-v3");
+        GitIndexKeyProvider provider = new GitIndexKeyProvider();
+
+        assertNull(provider.getContentKey(file("Missing.java", SIZE, MTIME_MILLIS)));
+        assertNull(provider.getContentKey(file("src/B.java", SIZE, MTIME_MILLIS)));
+    }
+
+    private void installIndex(String fixture) throws IOException {
+        installIndex(fixture, FileTime.fromMillis(MTIME_MILLIS + 60_000));
+    }
+
+    private void installIndex(String fixture, FileTime modified) throws IOException {
+        Path index = root.resolve(".git").resolve("index");
+        Files.createDirectories(index.getParent());
+        try (InputStream in = GitIndexKeyProviderTest.class.getResourceAsStream(fixture)) {
+            assertNotNull(in, fixture);
+            Files.copy(in, index);
+        }
+        Files.setLastModifiedTime(index, modified);
+    }
+
+    private VirtualFile file(String relativePath, long length, long timeStamp) throws IOException {
+        Path path = root.resolve(relativePath);
+        Files.createDirectories(path.getParent());
+        VirtualFile file = mock(VirtualFile.class);
+        when(file.isInLocalFileSystem()).thenReturn(true);
+        when(file.isDirectory()).thenReturn(false);
+        when(file.toNioPath()).thenReturn(path);
+        when(file.getLength()).thenReturn(length);
+        when(file.getTimeStamp()).thenReturn(timeStamp);
+        when(file.getPath()).thenReturn(path.toString());
+        return file;
+    }
+}
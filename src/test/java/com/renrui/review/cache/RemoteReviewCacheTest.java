@@ -0,0 +1,67 @@
+package com.renrui.review.cache;
+
+import com.renrui.presubmit.codereview.model.Issue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemoteReviewCacheTest {
+    private LocalReviewCacheServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new LocalReviewCacheServer(0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void shouldReadBackWrittenResult() throws Exception {
+        RemoteReviewCache cache = new RemoteReviewCache(server.getBaseUrl(), false, Duration.ofSeconds(2));
+        cache.put("abc|CLOUD|1.127", new ReviewResult(List.of(issue("问题一")), "abc", false));
+        waitForEntries(1);
+
+        ReviewResult result = cache.get("abc|CLOUD|1.127");
+        assertNotNull(result);
+        assertEquals("问题一", result.getIssues().get(0).getMessage());
+        assertNull(cache.get("missing"));
+    }
+
+    @Test
+    void shouldNotWriteInReadOnlyMode() throws Exception {
+        RemoteReviewCache cache = new RemoteReviewCache(server.getBaseUrl(), true, Duration.ofSeconds(2));
+        cache.put("abc", new ReviewResult(List.of(), "abc", false));
+        Thread.sleep(200);
+
+        assertEquals(0, server.size());
+    }
+
+    @Test
+    void shouldTreatUnreachableServerAsMiss() {
+        String baseUrl = server.getBaseUrl();
+        server.close();
+        RemoteReviewCache cache = new RemoteReviewCache(baseUrl, false, Duration.ofMillis(200));
+
+        assertNull(cache.get("abc"));
+    }
+
+    private void waitForEntries(int expected) throws InterruptedException {
+        for (int i = 0; i < 50 && server.size() < expected; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, server.size());
+    }
+
+    private static Issue issue(String message) {
+        return new Issue(Issue.IssueType.WARNING, message, "Demo.java", 1, "");
+    }
+}
@@ -0,0 +1,78 @@
+package com.renrui.review.cache;
+
+import com.renrui.presubmit.codereview.model.Issue;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReviewResultSerializerTest {
+    @Test
+    void shouldRoundTripStructuredIssues() throws IOException {
+        Instant timestamp = Instant.parse("2024-01-02T03:04:05.123456789Z");
+        ReviewResult original = new ReviewResult(List.of(
+                new Issue(Issue.IssueType.SECURITY, "发现硬编码密码", "src/Demo.java", 42, "使用配置中心"),
+                new Issue(Issue.IssueType.STYLE, "缺少标点", "src/Demo.java", -1, null)),
+                "abc123", true, timestamp);
+
+        ReviewResult decoded = ReviewResultSerializer.deserialize(ReviewResultSerializer.serialize(original));
+
+        assertEquals("abc123", decoded.getFileHash());
+        assertTrue(decoded.isTimeout());
+        assertEquals(timestamp, decoded.getTimestamp());
+        assertEquals(2, decoded.getIssues().size());
+        Issue first = decoded.getIssues().get(0);
+        assertEquals(Issue.IssueType.SECURITY, first.getType());
+        assertEquals("发现硬编码密码", first.getMessage());
+        assertEquals("src/Demo.java", first.getFile());
+        assertEquals(42, first.getLine());
+        assertEquals("使用配置中心", first.getSuggestion());
+        assertEquals(-1, decoded.getIssues().get(1).getLine());
+        assertNull(decoded.getIssues().get(1).getSuggestion());
+    }
+
+    @Test
+    void shouldKeepNullIssueType() throws IOException {
+        ReviewResult original = new ReviewResult(List.of(
+                new Issue(null, "未分类", "src/Demo.java", 1, null),
+                new Issue(Issue.IssueType.BUG, "空指针", "src/Demo.java", 2, null)),
+                "abc123", false, Instant.now());
+
+        ReviewResult decoded = ReviewResultSerializer.deserialize(ReviewResultSerializer.serialize(original));
+
+        assertNull(decoded.getIssues().get(0).getType());
+        assertEquals(Issue.IssueType.BUG, decoded.getIssues().get(1).getType());
+    }
+
+    @Test
+    void shouldRoundTripEveryIssueType() throws IOException {
+        for (Issue.IssueType type : Issue.IssueType.values()) {
+            ReviewResult original = new ReviewResult(List.of(new Issue(type, "问题", "A.java", 1, null)),
+                    "abc123", false, Instant.now());
+
+            ReviewResult decoded = ReviewResultSerializer.deserialize(ReviewResultSerializer.serialize(original));
+
+            assertEquals(type, decoded.getIssues().get(0).getType());
+        }
+    }
+
+    @Test
+    void shouldReadVersion1Data() throws IOException {
+        // 版本 1：一个 PERFORMANCE 类型（序号 2）、第 1 行、没有字符串的问题
+        byte[] data = {0x52, 1, 0, 0, 0, 0, 0, 1, 2, 0, 0, 2, 0};
+
+        ReviewResult decoded = ReviewResultSerializer.deserialize(data);
+
+        assertEquals(Issue.IssueType.PERFORMANCE, decoded.getIssues().get(0).getType());
+        assertEquals(1, decoded.getIssues().get(0).getLine());
+    }
+
+    @Test
+    void shouldRejectUnknownFormat() {
+        assertThrows(IOException.class, () -> ReviewResultSerializer.deserialize(new byte[]{0x52, 99}));
+        assertThrows(IOException.class, () -> ReviewResultSerializer.deserialize(new byte[]{1, 2, 3}));
+    }
+}
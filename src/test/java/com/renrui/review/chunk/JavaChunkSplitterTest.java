@@ -0,0 +1,71 @@
+package com.renrui.review.chunk;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaChunkSplitterTest {
+    private static final String SOURCE = String.join("\n",
+            "package demo;",
+            "",
+            "public class Demo {",
+            "    private int count;",
+            "",
+            "    /**",
+            "     * 增加计数",
+            "     */",
+            "    public void increment() {",
+            "        count++;",
+            "    }",
+            "",
+            "    public int get() {",
+            "        return count;",
+            "    }",
+            "}");
+
+    private JavaChunkSplitter splitter;
+
+    @BeforeEach
+    void setUp() {
+        splitter = new JavaChunkSplitter();
+    }
+
+    @Test
+    void shouldSplitByMemberIncludingJavadoc() {
+        List<CodeChunk> chunks = splitter.split(SOURCE);
+
+        assertEquals(4, chunks.size());
+        assertEquals(1, chunks.get(0).getStartLine());
+        assertEquals(4, chunks.get(1).getStartLine());
+        assertEquals(6, chunks.get(2).getStartLine());
+        assertTrue(chunks.get(2).getContent().startsWith("    /**"));
+        assertEquals(13, chunks.get(3).getStartLine());
+    }
+
+    @Test
+    void shouldCoverAllLines() {
+        List<CodeChunk> chunks = splitter.split(SOURCE);
+        int lines = chunks.stream().mapToInt(chunk -> chunk.getContent().split("\n", -1).length).sum();
+        assertEquals(SOURCE.split("\n", -1).length, lines);
+    }
+
+    @Test
+    void shouldKeepUnchangedChunksStableWhenOtherMemberChanges() {
+        String edited = SOURCE.replace("return count;", "return count + 0;");
+        List<CodeChunk> before = splitter.split(SOURCE);
+        List<CodeChunk> after = splitter.split(edited);
+
+        assertEquals(before.get(2).getContent(), after.get(2).getContent());
+        assertNotEquals(before.get(3).getContent(), after.get(3).getContent());
+    }
+
+    @Test
+    void shouldReturnWholeFileWhenParseFails() {
+        List<CodeChunk> chunks = splitter.split("class Broken {");
+        assertEquals(1, chunks.size());
+        assertEquals("class Broken {", chunks.get(0).getContent());
+    }
+}
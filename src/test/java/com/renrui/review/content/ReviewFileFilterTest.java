@@ -0,0 +1,36 @@
+package com.renrui.review.content;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReviewFileFilterTest {
+
+    @Test
+    void shouldMatchExcludeGlobs() {
+        ReviewFileFilter filter = new ReviewFileFilter(1024, "*.min.js, package-lock.json, build/**, /opt/vendor/*.c", true);
+
+        assertTrue(filter.isExcluded("/project/web/app.min.js"));
+        assertTrue(filter.isExcluded("/project/package-lock.json"));
+        assertTrue(filter.isExcluded("/project/module/build/Generated.java"));
+        assertTrue(filter.isExcluded("C:\\project\\web\\app.min.js"));
+        assertTrue(filter.isExcluded("/opt/vendor/zlib.c"));
+        assertFalse(filter.isExcluded("/opt/vendor/sub/zlib.c"));
+        assertFalse(filter.isExcluded("/project/web/app.js"));
+        assertFalse(filter.isExcluded("/project/my-package-lock.json"));
+    }
+
+    @Test
+    void shouldDetectGeneratedFiles() {
+        assertTrue(ReviewFileFilter.isGenerated("// Code generated by protoc-gen-go. DO NOT EDIT.\npackage foo\n"));
+        assertTrue(ReviewFileFilter.isGenerated("/**\n * @generated\n */\nclass A {}\n"));
+        assertTrue(ReviewFileFilter.isGenerated("var a=1;".repeat(1000)));
+        assertFalse(ReviewFileFilter.isGenerated("public class A {\n}\n"));
+    }
+
+    @Test
+    void shouldDetectNulBytes() {
+        assertTrue(ReviewFileFilter.containsNul(new byte[]{'P', 'K', 0, 3}, 4));
+        assertFalse(ReviewFileFilter.containsNul(new byte[]{'a', 'b', 0}, 2));
+    }
+}
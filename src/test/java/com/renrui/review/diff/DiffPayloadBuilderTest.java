@@ -0,0 +1,109 @@
+package com.renrui.review.diff;
+
+import com.renrui.presubmit.codereview.model.Issue;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiffPayloadBuilderTest {
+
+    @Test
+    void shouldOnlyIncludeChangedLinesWithContext() {
+        String before = lines(1, 20);
+        String after = before.replace("line 10\n", "changed 10\n");
+
+        DiffPayload payload = new DiffPayloadBuilder(1).build("A.java", before, after);
+
+        assertEquals("@@ -9,3 +9,3 @@\n line 9\n-line 10\n+changed 10\n line 11\n", payload.getText());
+        // 审查服务按新文件行号报告，片段覆盖的行原样保留，范围外的行定位到最近的一行
+        assertEquals(10, payload.mapLine(10));
+        assertEquals(11, payload.mapLine(11));
+        assertEquals(9, payload.mapLine(3));
+    }
+
+    @Test
+    void shouldMergeOverlappingHunks() {
+        String before = lines(1, 20);
+        String after = before.replace("line 5\n", "changed 5\n").replace("line 7\n", "changed 7\n")
+                .replace("line 18\n", "");
+
+        DiffPayload payload = new DiffPayloadBuilder(1).build("A.java", before, after);
+
+        String text = payload.getText();
+        assertEquals(2, text.split("@@ -", -1).length - 1);
+        assertTrue(text.startsWith("@@ -4,5 +4,5 @@\n"));
+        assertTrue(text.contains("@@ -17,3 +17,2 @@\n line 17\n-line 18\n line 19\n"));
+    }
+
+    @Test
+    void shouldMapDeletedLineToFollowingLine() {
+        String before = lines(1, 5);
+        String after = before.replace("line 3\n", "");
+
+        DiffPayload payload = new DiffPayloadBuilder(0).build("A.java", before, after);
+
+        assertEquals("@@ -3,1 +3,0 @@\n-line 3\n", payload.getText());
+        assertEquals(3, payload.mapLine(2));
+    }
+
+    @Test
+    void shouldTreatNewFileAsAdded() {
+        DiffPayload payload = new DiffPayloadBuilder(3).build("New.java", null, "a\nb\n");
+
+        assertEquals("@@ -1,0 +1,2 @@\n+a\n+b\n", payload.getText());
+        assertEquals(2, payload.mapLine(3));
+    }
+
+    @Test
+    void shouldSkipUnchangedFile() {
+        String content = lines(1, 3);
+
+        assertTrue(new DiffPayloadBuilder(3).build("A.java", content, content).isEmpty());
+    }
+
+    @Test
+    void shouldSplitLinesWithoutLineSeparators() {
+        assertArrayEquals(new String[]{"a", "b"}, DiffPayloadBuilder.splitLines("a\r\nb\r\n"));
+        assertArrayEquals(new String[]{"a", "", "b"}, DiffPayloadBuilder.splitLines(new StringBuilder("a\n\nb")));
+        assertArrayEquals(new String[0], DiffPayloadBuilder.splitLines(""));
+    }
+
+    @Test
+    void shouldMapIssueLinesBackToFile() {
+        String before = lines(1, 20);
+        DiffPayload payload = new DiffPayloadBuilder(1).build("A.java", before,
+                before.replace("line 15\n", "changed 15\n"));
+        Issue issue = new Issue(Issue.IssueType.BUG, "空指针", "A.java", 15, "判空");
+        Issue other = new Issue(Issue.IssueType.BUG, "空指针", "B.java", 4, "判空");
+
+        List<Issue> mapped = DiffPayload.mapIssues(List.of(issue, other), Map.of("A.java", payload));
+
+        assertEquals(15, mapped.get(0).getLine());
+        assertEquals(4, mapped.get(1).getLine());
+    }
+
+    @Test
+    void shouldKeepLineReadFromHunkHeader() {
+        String before = lines(1, 20);
+        DiffPayload payload = new DiffPayloadBuilder(1).build("A.java", before,
+                before.replace("line 13\n", "line 13\nnew line\n"));
+        assertEquals("@@ -13,2 +13,3 @@\n line 13\n+new line\n line 14\n", payload.getText());
+        // 按 hunk 头 +13 数到新增的行是第 14 行，不能再按片段位置换算一次
+        Issue issue = new Issue(Issue.IssueType.BUG, "空指针", "A.java", 14, "判空");
+
+        List<Issue> mapped = DiffPayload.mapIssues(List.of(issue), Map.of("A.java", payload));
+
+        assertEquals(14, mapped.get(0).getLine());
+    }
+
+    private static String lines(int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i <= to; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        return text.toString();
+    }
+}
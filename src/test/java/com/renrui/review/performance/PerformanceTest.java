@@ -24,7 +24,7 @@ public class PerformanceTest extends BasePlatformTestCase {
     public void setUp() throws Exception {
         super.setUp();
         Project project = getProject();
-        reviewCache = new ReviewCache();
+        reviewCache = ReviewCache.builder().build();
         reviewService = new AsyncReviewService(project, reviewCache);
         testFiles = generateTestFiles(100);
     }
@@ -74,8 +74,7 @@ public class PerformanceTest extends BasePlatformTestCase {
     }
 
     private double calculateCacheHitRate() {
-        // TODO: 实现缓存命中率计算逻辑
-        return 0.0;
+        return reviewCache.getStats().getHitRate() * 100;
     }
 
     @Override
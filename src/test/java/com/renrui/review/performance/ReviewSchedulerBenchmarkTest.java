@@ -0,0 +1,206 @@
+package com.renrui.review.performance;
+
+import com.renrui.review.service.ReviewScheduler;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 对比默认的 4 个平台线程和高并发虚拟线程执行 1000 个文件审查的吞吐量和资源占用
+ * 后端为模拟服务，每个请求固定延迟，模拟等待 AI 接口响应。模拟服务运行在单独的 JVM 中，
+ * 它的线程不计入峰值线程数；客户端与后端实现一致使用 OkHttp 同步调用。
+ *
+ * 耗时较长，默认不执行：./gradlew test -Dreview.benchmark=true --tests '*ReviewSchedulerBenchmarkTest'
+ */
+@EnabledIfSystemProperty(named = "review.benchmark", matches = "true")
+class ReviewSchedulerBenchmarkTest {
+    private static final int FILE_COUNT = 1000;
+    private static final int BACKEND_DELAY_MILLIS = 30;
+    // 与设置中的默认值一致
+    private static final int PLATFORM_CONCURRENCY = 4;
+    private static final int VIRTUAL_CONCURRENCY = 256;
+    private static final String RESPONSE = "{\"issues\":[]}";
+    private static final MediaType TEXT = MediaType.parse("text/plain; charset=utf-8");
+
+    private Process backend;
+    private OkHttpClient client;
+    private String reviewUrl;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        backend = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), MockBackend.class.getName())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        BufferedReader out = new BufferedReader(new InputStreamReader(backend.getInputStream(), StandardCharsets.UTF_8));
+        String port = out.readLine();
+        assertNotNull(port, "模拟后端启动失败");
+        reviewUrl = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port.trim() + "/review";
+        client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(VIRTUAL_CONCURRENCY, 5, TimeUnit.MINUTES))
+                .callTimeout(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.connectionPool().evictAll();
+        // 关闭标准输入后模拟后端自行退出
+        backend.getOutputStream().close();
+        if (!backend.waitFor(5, TimeUnit.SECONDS)) {
+            backend.destroyForcibly();
+        }
+    }
+
+    @Test
+    void compareDefaultPlatformThreadsWithVirtualThreads() throws Exception {
+        // 预热 HTTP 连接和 JIT
+        run(ReviewScheduler.ExecutionMode.PLATFORM, PLATFORM_CONCURRENCY, 100);
+
+        BenchmarkResult platform = run(ReviewScheduler.ExecutionMode.PLATFORM, PLATFORM_CONCURRENCY, FILE_COUNT);
+        System.out.println(platform);
+
+        assumeTrue(ReviewScheduler.isVirtualThreadSupported(), "运行环境不支持虚拟线程（Java 17 会回退到平台线程）");
+        run(ReviewScheduler.ExecutionMode.VIRTUAL, VIRTUAL_CONCURRENCY, 100);
+        BenchmarkResult virtual = run(ReviewScheduler.ExecutionMode.VIRTUAL, VIRTUAL_CONCURRENCY, FILE_COUNT);
+        System.out.println(virtual);
+
+        assertEquals(ReviewScheduler.ExecutionMode.VIRTUAL, virtual.mode);
+        // 等待后端的时间占主导，高并发的虚拟线程应明显快于默认的 4 个平台线程
+        assertTrue(virtual.elapsedNanos < platform.elapsedNanos);
+    }
+
+    private BenchmarkResult run(ReviewScheduler.ExecutionMode mode, int concurrency, int files) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long heapBefore = usedHeapAfterGc();
+        threads.resetPeakThreadCount();
+
+        ReviewScheduler scheduler = new ReviewScheduler(concurrency, files, mode);
+        try {
+            long start = System.nanoTime();
+            List<CompletableFuture<String>> reviews = new ArrayList<>(files);
+            for (int i = 0; i < files; i++) {
+                String path = "src/File" + i + ".java";
+                reviews.add(scheduler.submit(ReviewScheduler.Priority.COMMIT, () -> callBackend(path)));
+            }
+            CompletableFuture.allOf(reviews.toArray(new CompletableFuture[0])).get(5, TimeUnit.MINUTES);
+            long elapsedNanos = System.nanoTime() - start;
+            int peakThreads = threads.getPeakThreadCount();
+            // 结果仍被引用，GC 后的增长为调度器和结果占用的内存
+            long heapAfter = usedHeapAfterGc();
+
+            for (CompletableFuture<String> review : reviews) {
+                assertEquals(RESPONSE, review.join());
+            }
+            return new BenchmarkResult(scheduler.getExecutionMode(), concurrency, files, elapsedNanos,
+                    peakThreads, heapAfter - heapBefore);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private String callBackend(String path) throws Exception {
+        Request request = new Request.Builder()
+                .url(reviewUrl)
+                .post(RequestBody.create(path, TEXT))
+                .build();
+        // 阻塞调用，与现有后端实现一致
+        try (Response response = client.newCall(request).execute()) {
+            return response.body().string();
+        }
+    }
+
+    /**
+     * 在单独的 JVM 中运行的模拟后端，启动后在标准输出打印端口，标准输入关闭后退出
+     */
+    static final class MockBackend {
+        public static void main(String[] args) throws Exception {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/review", exchange -> {
+                try {
+                    Thread.sleep(BACKEND_DELAY_MILLIS);
+                    exchange.getRequestBody().readAllBytes();
+                    byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            });
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+            System.out.println(server.getAddress().getPort());
+            System.out.flush();
+            while (System.in.read() != -1) {
+                // 等待父进程关闭标准输入
+            }
+            server.stop(0);
+            System.exit(0);
+        }
+    }
+
+    private static final class BenchmarkResult {
+        private final ReviewScheduler.ExecutionMode mode;
+        private final int concurrency;
+        private final int files;
+        private final long elapsedNanos;
+        private final int peakThreads;
+        private final long heapDelta;
+
+        private BenchmarkResult(ReviewScheduler.ExecutionMode mode, int concurrency, int files,
+                                long elapsedNanos, int peakThreads, long heapDelta) {
+            this.mode = mode;
+            this.concurrency = concurrency;
+            this.files = files;
+            this.elapsedNanos = elapsedNanos;
+            this.peakThreads = peakThreads;
+            this.heapDelta = heapDelta;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            return String.format("%s 并发%d: %d 个文件 %.2fs，吞吐 %.1f 文件/秒，峰值平台线程 %d，堆增长 %.1fMB",
+                    mode, concurrency, files, seconds, files / seconds, peakThreads, heapDelta / 1024.0 / 1024.0);
+        }
+    }
+}
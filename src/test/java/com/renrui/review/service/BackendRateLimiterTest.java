@@ -0,0 +1,101 @@
+package com.renrui.review.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackendRateLimiterTest {
+
+    @Test
+    void shouldQueueWhenConcurrencyLimitReached() throws Exception {
+        BackendRateLimiter limiter = new BackendRateLimiter("test", 1000, 10, 1, 4);
+        BackendRateLimiter.Permit first = limiter.acquire(ReviewCancellation.NONE);
+
+        CompletableFuture<BackendRateLimiter.Permit> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire(ReviewCancellation.NONE);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waitForQueueLength(limiter, 1);
+        assertFalse(second.isDone());
+
+        first.success(0);
+        second.get(5, TimeUnit.SECONDS).success(0);
+        assertEquals(0, limiter.getStats().getQueueLength());
+    }
+
+    @Test
+    void shouldHalveLimitWhenThrottled() throws Exception {
+        BackendRateLimiter limiter = new BackendRateLimiter("test", 1000, 10, 8, 16);
+        limiter.acquire(ReviewCancellation.NONE).throttled(Duration.ZERO);
+
+        assertEquals(4, limiter.getStats().getConcurrencyLimit());
+        assertEquals(1, limiter.getStats().getThrottledCount());
+    }
+
+    @Test
+    void shouldGrowLimitOnSuccess() throws Exception {
+        BackendRateLimiter limiter = new BackendRateLimiter("test", 1000, 100, 1, 16);
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire(ReviewCancellation.NONE).success(0);
+        }
+
+        assertTrue(limiter.getStats().getConcurrencyLimit() > 1);
+    }
+
+    @Test
+    void shouldNormalizeLatencyByPayloadSize() throws Exception {
+        BackendRateLimiter limiter = new BackendRateLimiter("test", 1000, 100, 4, 16);
+        limiter.acquire(ReviewCancellation.NONE).success(0);
+        int limit = limiter.getStats().getConcurrencyLimit();
+
+        // 大批次耗时更长，按大小归一化后与小请求相当，不应减半
+        BackendRateLimiter.Permit large = limiter.acquire(ReviewCancellation.NONE);
+        Thread.sleep(300);
+        large.success(64 * 16 * 1024);
+
+        assertTrue(limiter.getStats().getConcurrencyLimit() >= limit);
+    }
+
+    @Test
+    void shouldStopWaitingWhenCancelled() throws Exception {
+        BackendRateLimiter limiter = new BackendRateLimiter("test", 1000, 10, 1, 1);
+        limiter.acquire(ReviewCancellation.NONE);
+        ReviewCancellation cancellation = new ReviewCancellation();
+
+        CompletableFuture<BackendRateLimiter.Permit> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire(cancellation);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waitForQueueLength(limiter, 1);
+        cancellation.cancel();
+
+        Exception e = assertThrows(Exception.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(CancellationException.class, e.getCause());
+    }
+
+    @Test
+    void shouldParseRetryAfterSeconds() {
+        assertEquals(Duration.ofSeconds(3), BackendRateLimiter.parseRetryAfter("3"));
+        assertEquals(Duration.ofSeconds(60), BackendRateLimiter.parseRetryAfter("3600"));
+        assertNull(BackendRateLimiter.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertNull(BackendRateLimiter.parseRetryAfter(null));
+    }
+
+    private static void waitForQueueLength(BackendRateLimiter limiter, int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && limiter.getStats().getQueueLength() < expected; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, limiter.getStats().getQueueLength());
+    }
+}
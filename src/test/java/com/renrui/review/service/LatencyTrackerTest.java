@@ -0,0 +1,57 @@
+package com.renrui.review.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyTrackerTest {
+
+    @Test
+    void shouldUseDefaultTimeoutUntilEnoughSamples() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < 5; i++) {
+            tracker.record(Duration.ofMillis(100), 0);
+        }
+
+        assertEquals(LatencyTracker.DEFAULT_TIMEOUT, tracker.timeoutFor(0));
+        assertNull(tracker.hedgeDelayFor(0));
+    }
+
+    @Test
+    void shouldDeriveTimeoutFromPercentiles() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(Duration.ofMillis(i * 100L), 0);
+        }
+
+        assertEquals(Duration.ofMillis(9500), tracker.hedgeDelayFor(0));
+        // p99 = 9.9s，乘以系数 1.5
+        assertEquals(Duration.ofMillis(14850), tracker.timeoutFor(0));
+    }
+
+    @Test
+    void shouldScaleWithPayloadSize() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < 50; i++) {
+            tracker.record(Duration.ofSeconds(4), 0);
+        }
+
+        Duration small = tracker.timeoutFor(0);
+        Duration large = tracker.timeoutFor(16 * 1024);
+        assertEquals(Duration.ofSeconds(6), small);
+        assertEquals(Duration.ofSeconds(12), large);
+    }
+
+    @Test
+    void shouldClampTimeout() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < 50; i++) {
+            tracker.record(Duration.ofMillis(10), 0);
+        }
+
+        assertEquals(Duration.ofSeconds(5), tracker.timeoutFor(0));
+        assertEquals(Duration.ofSeconds(120), tracker.timeoutFor(Long.MAX_VALUE / 2));
+    }
+}
@@ -0,0 +1,195 @@
+package com.renrui.review.service;
+
+import com.renrui.presubmit.codereview.model.Issue;
+import com.renrui.presubmit.codereview.service.AiCodeReviewService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReviewBatcherTest {
+    private RecordingBackend backend;
+    private ReviewScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        backend = new RecordingBackend();
+        scheduler = new ReviewScheduler(2, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void shouldMergeRequestsWithinWindow() throws Exception {
+        ReviewBatcher batcher = new ReviewBatcher(backend, scheduler, Duration.ofMillis(200), 1024 * 1024, 10);
+
+        CompletableFuture<ReviewBatcher.FileResult> a = batcher.submit("A.java", "class A {}", ReviewScheduler.Priority.COMMIT);
+        CompletableFuture<ReviewBatcher.FileResult> b = batcher.submit("B.java", "class B {}", ReviewScheduler.Priority.COMMIT);
+
+        assertEquals("A.java", a.get(5, TimeUnit.SECONDS).getIssues().get(0).getFile());
+        assertEquals("B.java", b.get(5, TimeUnit.SECONDS).getIssues().get(0).getFile());
+        assertEquals(1, a.get().getIssues().size());
+        assertTrue(a.get().isCacheable());
+        assertEquals(1, backend.calls.size());
+        assertEquals(2, backend.calls.get(0).size());
+        batcher.shutdown();
+    }
+
+    @Test
+    void shouldReportWholeBatchSizeWhenSent() throws Exception {
+        ReviewBatcher batcher = new ReviewBatcher(backend, scheduler, Duration.ofMinutes(1), 1024 * 1024, 2);
+        CompletableFuture<Long> sizeA = new CompletableFuture<>();
+        CompletableFuture<Long> sizeB = new CompletableFuture<>();
+
+        batcher.submit("A.java", "class A {}", ReviewScheduler.Priority.COMMIT, ReviewCancellation.NONE,
+                sizeA::complete);
+        batcher.submit("B.java", "class B {}", ReviewScheduler.Priority.COMMIT, ReviewCancellation.NONE,
+                sizeB::complete);
+
+        long expected = "A.java".length() + "class A {}".length() + "B.java".length() + "class B {}".length();
+        assertEquals(expected, sizeA.get(5, TimeUnit.SECONDS));
+        assertEquals(expected, sizeB.get(5, TimeUnit.SECONDS));
+        batcher.shutdown();
+    }
+
+    @Test
+    void shouldNotSpreadUnmatchedIssuesAcrossBatch() throws Exception {
+        backend.extraIssueFile = "Other.java";
+        ReviewBatcher batcher = new ReviewBatcher(backend, scheduler, Duration.ofMinutes(1), 1024 * 1024, 2);
+
+        CompletableFuture<ReviewBatcher.FileResult> a = batcher.submit("A.java", "class A {}", ReviewScheduler.Priority.COMMIT);
+        CompletableFuture<ReviewBatcher.FileResult> b = batcher.submit("B.java", "class B {}", ReviewScheduler.Priority.COMMIT);
+
+        assertEquals(2, a.get(5, TimeUnit.SECONDS).getIssues().size());
+        assertEquals(1, b.get(5, TimeUnit.SECONDS).getIssues().size());
+        assertFalse(a.get().isCacheable());
+        assertFalse(b.get().isCacheable());
+        batcher.shutdown();
+    }
+
+    @Test
+    void shouldSendImmediatelyWhenBatchIsFull() throws Exception {
+        ReviewBatcher batcher = new ReviewBatcher(backend, scheduler, Duration.ofMinutes(1), 1024 * 1024, 2);
+
+        CompletableFuture<ReviewBatcher.FileResult> a = batcher.submit("A.java", "class A {}", ReviewScheduler.Priority.COMMIT);
+        CompletableFuture<ReviewBatcher.FileResult> b = batcher.submit("B.java", "class B {}", ReviewScheduler.Priority.COMMIT);
+
+        CompletableFuture.allOf(a, b).get(5, TimeUnit.SECONDS);
+        assertEquals(1, backend.calls.size());
+        batcher.shutdown();
+    }
+
+    @Test
+    void shouldSplitBatchOnByteBudget() throws Exception {
+        ReviewBatcher batcher = new ReviewBatcher(backend, scheduler, Duration.ofMillis(100), 40, 10);
+
+        CompletableFuture<ReviewBatcher.FileResult> a = batcher.submit("A.java", "class A {}", ReviewScheduler.Priority.COMMIT);
+        CompletableFuture<ReviewBatcher.FileResult> b = batcher.submit("B.java", "class B {}", ReviewScheduler.Priority.COMMIT);
+
+        CompletableFuture.allOf(a, b).get(5, TimeUnit.SECONDS);
+        assertEquals(2, backend.calls.size());
+        batcher.shutdown();
+    }
+
+    @Test
+    void shouldFailAllRequestsWhenBackendFails() {
+        backend.fail = true;
+        ReviewBatcher batcher = new ReviewBatcher(backend, scheduler, Duration.ofMillis(50), 1024 * 1024, 10);
+
+        CompletableFuture<ReviewBatcher.FileResult> a = batcher.submit("A.java", "class A {}", ReviewScheduler.Priority.COMMIT);
+        CompletableFuture<ReviewBatcher.FileResult> b = batcher.submit("B.java", "class B {}", ReviewScheduler.Priority.COMMIT);
+
+        assertThrows(Exception.class, () -> a.get(5, TimeUnit.SECONDS));
+        assertThrows(Exception.class, () -> b.get(5, TimeUnit.SECONDS));
+        batcher.shutdown();
+    }
+
+    @Test
+    void shouldCancelBackendCallWhenAllRequestsAreCancelled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        AiCodeReviewService blocking = new RecordingBackend() {
+            @Override
+            public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                             ReviewCancellation cancellation) {
+                cancellation.onCancel(cancelled::countDown);
+                started.countDown();
+                try {
+                    cancelled.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                cancellation.checkCanceled();
+                return List.of();
+            }
+        };
+        ReviewBatcher batcher = new ReviewBatcher(blocking, scheduler, Duration.ZERO, 1024 * 1024, 10);
+        ReviewCancellation cancellation = new ReviewCancellation();
+
+        CompletableFuture<ReviewBatcher.FileResult> a = batcher.submit("A.java", "class A {}", ReviewScheduler.Priority.COMMIT, cancellation);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        cancellation.cancel();
+
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        assertTrue(a.isCancelled());
+        batcher.shutdown();
+    }
+
+    @Test
+    void shouldDropQueuedRequestOnCancel() {
+        ReviewBatcher batcher = new ReviewBatcher(backend, scheduler, Duration.ofMinutes(1), 1024 * 1024, 10);
+        ReviewCancellation cancellation = new ReviewCancellation();
+
+        CompletableFuture<ReviewBatcher.FileResult> a = batcher.submit("A.java", "class A {}", ReviewScheduler.Priority.COMMIT, cancellation);
+        cancellation.cancel();
+        batcher.flush();
+
+        assertTrue(a.isCancelled());
+        assertTrue(backend.calls.isEmpty());
+        batcher.shutdown();
+    }
+
+    /**
+     * 每个文件返回一个问题，并记录每次调用的文件列表
+     */
+    private static class RecordingBackend implements AiCodeReviewService {
+        private final List<Map<String, String>> calls = new CopyOnWriteArrayList<>();
+        private volatile boolean fail;
+        // 不为 null 时额外返回一个位于该文件的问题
+        private volatile String extraIssueFile;
+
+        @Override
+        public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage) {
+            calls.add(Map.copyOf(changedFiles));
+            if (fail) {
+                throw new RuntimeException("backend unavailable");
+            }
+            List<Issue> issues = new ArrayList<>();
+            for (String file : changedFiles.keySet()) {
+                issues.add(new Issue(Issue.IssueType.WARNING, "问题", file, 1, ""));
+            }
+            if (extraIssueFile != null) {
+                issues.add(new Issue(Issue.IssueType.WARNING, "其他文件的问题", extraIssueFile, 1, ""));
+            }
+            return issues;
+        }
+
+        @Override
+        public ServiceType getServiceType() {
+            return ServiceType.CLOUD;
+        }
+    }
+}
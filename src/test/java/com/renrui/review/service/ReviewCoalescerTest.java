@@ -0,0 +1,147 @@
+package com.renrui.review.service;
+
+import com.renrui.presubmit.codereview.model.Issue;
+import com.renrui.presubmit.codereview.service.AiCodeReviewService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReviewCoalescerTest {
+    private BlockingBackend backend;
+    private ReviewScheduler scheduler;
+    private ReviewBatcher batcher;
+    private ReviewCoalescer<List<Issue>> coalescer;
+
+    @BeforeEach
+    void setUp() {
+        backend = new BlockingBackend();
+        scheduler = new ReviewScheduler(4, 100);
+        batcher = new ReviewBatcher(backend, scheduler, Duration.ZERO, 1024 * 1024, 10);
+        coalescer = new ReviewCoalescer<>();
+    }
+
+    @AfterEach
+    void tearDown() {
+        backend.release.countDown();
+        batcher.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void shouldMakeOneBackendCallForConcurrentCallers() throws Exception {
+        CompletableFuture<List<Issue>> save = review("hash-a", "A.java", ReviewCancellation.NONE);
+        assertTrue(backend.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<List<Issue>> commit = review("hash-a", "A.java", ReviewCancellation.NONE);
+        backend.release.countDown();
+
+        assertEquals(1, save.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, commit.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, backend.calls.get());
+        assertFalse(coalescer.isInFlight("hash-a"));
+    }
+
+    @Test
+    void shouldKeepSharedReviewWhenOneCallerCancels() throws Exception {
+        ReviewCancellation saveCancellation = new ReviewCancellation();
+        CompletableFuture<List<Issue>> save = review("hash-a", "A.java", saveCancellation);
+        assertTrue(backend.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<List<Issue>> commit = review("hash-a", "A.java", ReviewCancellation.NONE);
+
+        saveCancellation.cancel();
+        backend.release.countDown();
+
+        assertTrue(save.isCancelled());
+        assertEquals(1, commit.get(5, TimeUnit.SECONDS).size());
+        assertFalse(backend.cancelled);
+        assertEquals(1, backend.calls.get());
+    }
+
+    @Test
+    void shouldCancelSharedReviewWhenAllCallersCancel() throws Exception {
+        ReviewCancellation first = new ReviewCancellation();
+        ReviewCancellation second = new ReviewCancellation();
+        CompletableFuture<List<Issue>> a = review("hash-a", "A.java", first);
+        assertTrue(backend.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<List<Issue>> b = review("hash-a", "A.java", second);
+
+        first.cancel();
+        second.cancel();
+
+        assertTrue(a.isCancelled());
+        assertTrue(b.isCancelled());
+        assertTrue(backend.cancelledLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldReviewDifferentContentSeparately() throws Exception {
+        backend.release.countDown();
+        CompletableFuture<List<Issue>> a = review("hash-a", "A.java", ReviewCancellation.NONE);
+        CompletableFuture<List<Issue>> b = review("hash-b", "B.java", ReviewCancellation.NONE);
+
+        CompletableFuture.allOf(a, b).get(5, TimeUnit.SECONDS);
+        assertEquals(2, backend.calls.get());
+    }
+
+    private CompletableFuture<List<Issue>> review(String hash, String path, ReviewCancellation cancellation) {
+        return coalescer.review(hash, cancellation, shared ->
+                batcher.submit(path, "class A {}", ReviewScheduler.Priority.COMMIT, shared)
+                        .thenApply(ReviewBatcher.FileResult::getIssues));
+    }
+
+    /**
+     * 每个文件返回一个问题，放行前一直阻塞，用于在审查进行中加入第二个调用方
+     */
+    private static class BlockingBackend implements AiCodeReviewService {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch cancelledLatch = new CountDownLatch(1);
+        private volatile boolean cancelled;
+
+        @Override
+        public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage) {
+            return reviewChanges(changedFiles, commitMessage, ReviewCancellation.NONE);
+        }
+
+        @Override
+        public List<Issue> reviewChanges(Map<String, String> changedFiles, String commitMessage,
+                                         ReviewCancellation cancellation) {
+            calls.incrementAndGet();
+            Runnable unregister = cancellation.onCancel(() -> {
+                cancelled = true;
+                cancelledLatch.countDown();
+                release.countDown();
+            });
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                unregister.run();
+            }
+            cancellation.checkCanceled();
+            List<Issue> issues = new ArrayList<>();
+            for (String file : changedFiles.keySet()) {
+                issues.add(new Issue(Issue.IssueType.WARNING, "问题", file, 1, ""));
+            }
+            return issues;
+        }
+
+        @Override
+        public ServiceType getServiceType() {
+            return ServiceType.CLOUD;
+        }
+    }
+}